@@ -0,0 +1,55 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic test data shared by the benchmarks, so runs are comparable over time.
+ */
+final class BenchmarkData
+{
+    static final String[] COLORS = {"RED", "GREEN", "BLUE", "WHITE", "BLACK", "SILVER", "YELLOW", "ORANGE"};
+    static final String[] BRANDS = {"Toyota", "Honda", "Ford", "BMW", "Audi", "Kia"};
+    static final String[] CITIES = {"London", "New York", "Paris", "Tokyo", "Lima", "Asuncion", "Berlin"};
+
+    private BenchmarkData()
+    {
+    }
+
+    static List<Integer> numbers(int size)
+    {
+        List<Integer> numbers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+
+    static List<Car> cars(int size)
+    {
+        Random random = new Random(size);
+        List<Car> cars = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Car car = new Car();
+            car.setColor(COLORS[random.nextInt(COLORS.length)]);
+            car.setBrand(BRANDS[random.nextInt(BRANDS.length)]);
+            car.setGasLevel(random.nextInt(400) / 10.0);
+            if (random.nextInt(4) == 0) {
+                car.setPassengers(List.of("Driver", "Passenger" + random.nextInt(100)));
+            }
+            cars.add(car);
+        }
+        return cars;
+    }
+
+    static List<CollectorOperators.User> users(int size)
+    {
+        Random random = new Random(size);
+        List<CollectorOperators.User> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(new CollectorOperators.User("user" + i, CITIES[random.nextInt(CITIES.length)], 18 + random.nextInt(60)));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,130 @@
+package com.functional.java;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a list of cars through CarWriter/CarReader and through Java serialization.
+ * The bytesPerCar counter shows the encoded size next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarCodecBenchmark
+{
+    @Param({"1000", "100000"})
+    int size;
+
+    List<Car> cars;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size
+    {
+        public double bytesPerCar;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            bytesPerCar = 0;
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        cars = BenchmarkData.cars(size);
+    }
+
+    @Benchmark
+    public List<Car> carCodecRoundTrip(Size encoded) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CarWriter writer = new CarWriter(bytes)) {
+            writer.writeAll(cars);
+        }
+        encoded.bytesPerCar = (double) bytes.size() / size;
+        List<Car> read = new ArrayList<>(size);
+        new CarReader(new ByteArrayInputStream(bytes.toByteArray())).forEachRemaining(read::add);
+        return read;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<Car> javaSerializationRoundTrip(Size encoded) throws IOException, ClassNotFoundException
+    {
+        ArrayList<SerializedCar> copies = new ArrayList<>(size);
+        for (Car car : cars) {
+            copies.add(new SerializedCar(car));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(copies);
+        }
+        encoded.bytesPerCar = (double) bytes.size() / size;
+        List<Car> read = new ArrayList<>(size);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (SerializedCar copy : (List<SerializedCar>) in.readObject()) {
+                read.add(copy.toCar());
+            }
+        }
+        return read;
+    }
+
+    /**
+     * The fields of a Car in a form Java serialization accepts, so Car itself need not be Serializable.
+     * Copying to and from it is part of the measured round trip, as encoding is for CarWriter.
+     */
+    static final class SerializedCar implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String color;
+        private final String brand;
+        private final double gasLevel;
+        private final ArrayList<String> passengers;
+        private final ArrayList<String> trunk;
+
+        SerializedCar(Car car)
+        {
+            this.color = car.getColor();
+            this.brand = car.getBrand();
+            this.gasLevel = car.getGasLevel();
+            this.passengers = new ArrayList<>(car.getPassengers());
+            this.trunk = new ArrayList<>(car.getTrunk());
+        }
+
+        Car toCar()
+        {
+            Car car = new Car(passengers, trunk);
+            car.setColor(color);
+            car.setBrand(brand);
+            car.setGasLevel(gasLevel);
+            return car;
+        }
+    }
+}
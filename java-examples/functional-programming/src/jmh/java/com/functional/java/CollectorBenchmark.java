@@ -0,0 +1,162 @@
+package com.functional.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The reductions shown in CollectExample and CollectorOperators, on larger inputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectorBenchmark
+{
+    @Param({"1000", "100000"})
+    int size;
+
+    List<CollectorOperators.User> users;
+
+    @Setup
+    public void setUp()
+    {
+        users = BenchmarkData.users(size);
+    }
+
+    @Benchmark
+    public Map<String, List<CollectorOperators.User>> groupingByCity()
+    {
+        return users.stream().collect(Collectors.groupingBy(CollectorOperators.User::getCity));
+    }
+
+    @Benchmark
+    public Map<String, Long> countingByCity()
+    {
+        return users.stream().collect(Collectors.groupingBy(CollectorOperators.User::getCity, Collectors.counting()));
+    }
+
+    @Benchmark
+    public Map<String, Long> countingByCityParallel()
+    {
+        return users.parallelStream().collect(Collectors.groupingBy(CollectorOperators.User::getCity, Collectors.counting()));
+    }
+
+    @Benchmark
+    public Map<String, Long> countingByCityConcurrent()
+    {
+        return users.parallelStream().collect(MoreCollectors.countingBy(CollectorOperators.User::getCity));
+    }
+
+    @Benchmark
+    public Map<String, Long> countingByNameConcurrent()
+    {
+        // one key per user: the high-cardinality case
+        return users.parallelStream().collect(MoreCollectors.countingBy(CollectorOperators.User::getName));
+    }
+
+    @Benchmark
+    public Map<String, Long> countingByNameParallel()
+    {
+        return users.parallelStream().collect(Collectors.groupingBy(CollectorOperators.User::getName, Collectors.counting()));
+    }
+
+    @Benchmark
+    public Map<String, Integer> sortedByAgeWithLinkedHashMap()
+    {
+        return users.stream()
+            .sorted(Comparator.comparingInt(CollectorOperators.User::getAge))
+            .collect(Collectors.toMap(CollectorOperators.User::getName, CollectorOperators.User::getAge, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    @Benchmark
+    public Map<String, Integer> sortedByAgeWithToSortedMap()
+    {
+        return users.stream().collect(MoreCollectors.toSortedMap(CollectorOperators.User::getName,
+            CollectorOperators.User::getAge, Map.Entry.<String, Integer>comparingByValue()));
+    }
+
+    @Benchmark
+    public Map<String, Integer> oldest10WithFullSort()
+    {
+        return users.stream()
+            .sorted(Comparator.comparingInt(CollectorOperators.User::getAge).reversed())
+            .limit(10)
+            .collect(Collectors.toMap(CollectorOperators.User::getName, CollectorOperators.User::getAge, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    @Benchmark
+    public Map<String, Integer> oldest10WithToSortedMap()
+    {
+        return users.stream().collect(MoreCollectors.toSortedMap(CollectorOperators.User::getName,
+            CollectorOperators.User::getAge, Map.Entry.<String, Integer>comparingByValue().reversed(), 10));
+    }
+
+    @Benchmark
+    public String joiningNames()
+    {
+        return users.stream().map(CollectorOperators.User::getName).collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    @Benchmark
+    public String joiningNamesPresized()
+    {
+        return users.stream().map(CollectorOperators.User::getName).collect(MoreCollectors.joining(", ", "[", "]")).toString();
+    }
+
+    @Benchmark
+    public String joiningNamesPresizedParallel()
+    {
+        return users.parallelStream().map(CollectorOperators.User::getName).collect(MoreCollectors.joining(", ", "[", "]")).toString();
+    }
+
+    @Benchmark
+    public String joiningNamesParallel()
+    {
+        return users.parallelStream().map(CollectorOperators.User::getName).collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    @Benchmark
+    public StringBuilder collectIntoStringBuilder()
+    {
+        return users.stream()
+            .map(CollectorOperators.User::getName)
+            .collect(
+                StringBuilder::new,
+                (sb, s) -> {
+                    if (sb.length() > 0) sb.append(", ");
+                    sb.append(s);
+                },
+                (sb1, sb2) -> {
+                    if (sb1.length() > 0 && sb2.length() > 0) sb1.append(", ");
+                    sb1.append(sb2);
+                }
+            );
+    }
+
+    @Benchmark
+    public List<String> collectIntoArrayListParallel()
+    {
+        return users.parallelStream()
+            .map(CollectorOperators.User::getName)
+            .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+}
@@ -0,0 +1,86 @@
+package com.functional.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Composed Criterion evaluation through App.getAllCriterion: the tree as written,
+ * its compiled form, and the old per-element Arrays.stream color test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CriterionBenchmark
+{
+    @Param({"1000", "100000"})
+    int size;
+
+    List<Car> cars;
+    Criterion<Car> composed;
+    Criterion<Car> compiled;
+    Criterion<Car> streamColors;
+    Criterion<Car> inColors;
+
+    @Setup
+    public void setUp()
+    {
+        cars = BenchmarkData.cars(size);
+        String[] colors = {"RED", "BLUE", "YELLOW"};
+        streamColors = c -> Arrays.stream(colors).anyMatch(color -> color.equals(c.getColor()));
+        inColors = Criterion.in(Car::getColor, Arrays.asList(colors));
+
+        // (RED OR BLUE) AND Toyota AND NOT low on gas: written in the least helpful order
+        Criterion<Car> red = c -> "RED".equals(c.getColor());
+        Criterion<Car> blue = c -> "BLUE".equals(c.getColor());
+        Criterion<Car> lowGas = c -> c.getGasLevel() < 5.0;
+        composed = red.orCriterion(blue)
+            .andCriterion(lowGas.negate())
+            .andCriterion(c -> "Toyota".equals(c.getBrand()));
+        compiled = composed.compile(cars.subList(0, Math.min(1000, cars.size())));
+    }
+
+    @Benchmark
+    public List<Car> composedAsWritten()
+    {
+        return App.getAllCriterion(cars, composed);
+    }
+
+    @Benchmark
+    public List<Car> composedCompiled()
+    {
+        return App.getAllCriterion(cars, compiled);
+    }
+
+    @Benchmark
+    public void colorsArraysStream(Blackhole bh)
+    {
+        for (Car car : cars) {
+            bh.consume(streamColors.test(car));
+        }
+    }
+
+    @Benchmark
+    public void colorsCriterionIn(Blackhole bh)
+    {
+        for (Car car : cars) {
+            bh.consume(inColors.test(car));
+        }
+    }
+}
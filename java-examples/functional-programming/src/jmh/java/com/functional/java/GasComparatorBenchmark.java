@@ -0,0 +1,83 @@
+package com.functional.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting cars by gas level the way App does it (copy, then sort with GasComparator),
+ * against KeySort and sorting the gas column of a CarStore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GasComparatorBenchmark
+{
+    @Param({"1000", "100000"})
+    int size;
+
+    List<Car> cars;
+    CarStore store;
+
+    @Setup
+    public void setUp()
+    {
+        cars = BenchmarkData.cars(size);
+        store = CarStore.of(cars);
+    }
+
+    @Benchmark
+    public List<Car> sortCopyWithGasComparator()
+    {
+        List<Car> sorted = new ArrayList<>(cars);
+        sorted.sort(new GasComparator());
+        return sorted;
+    }
+
+    @Benchmark
+    public Car minWithGasComparator()
+    {
+        return cars.stream().min(new GasComparator()).orElse(null);
+    }
+
+    @Benchmark
+    public List<Car> keySortByGas()
+    {
+        return KeySort.sortByKey(cars, Car::getGasLevel);
+    }
+
+    @Benchmark
+    public List<Car> lowest10WithFullSort()
+    {
+        List<Car> sorted = new ArrayList<>(cars);
+        sorted.sort(new GasComparator());
+        return sorted.subList(0, 10);
+    }
+
+    @Benchmark
+    public List<Car> lowest10WithBottomK()
+    {
+        return KeySort.bottomK(cars, Car::getGasLevel, 10);
+    }
+
+    @Benchmark
+    public int[] carStoreRowsSortedByGas()
+    {
+        return store.rowsSortedByGas();
+    }
+}
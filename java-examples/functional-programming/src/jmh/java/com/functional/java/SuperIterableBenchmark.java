@@ -0,0 +1,77 @@
+package com.functional.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SuperIterable filter/map/flatMap chains at several sizes, lazy (fused) against
+ * materialized after every stage (the old eager behaviour).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuperIterableBenchmark
+{
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    SuperIterable<Integer> numbers;
+
+    @Setup
+    public void setUp()
+    {
+        List<Integer> source = BenchmarkData.numbers(size);
+        numbers = new SuperIterable<>(source);
+    }
+
+    @Benchmark
+    public void filterFilterMapFused(Blackhole bh)
+    {
+        numbers
+            .filter(n -> n % 2 == 0)
+            .filter(n -> n % 3 == 0)
+            .map(n -> n * 2)
+            .forEvery(bh::consume);
+    }
+
+    @Benchmark
+    public void filterFilterMapMaterialized(Blackhole bh)
+    {
+        numbers
+            .filter(n -> n % 2 == 0).materialize()
+            .filter(n -> n % 3 == 0).materialize()
+            .map(n -> n * 2).materialize()
+            .forEvery(bh::consume);
+    }
+
+    @Benchmark
+    public void flatMap(Blackhole bh)
+    {
+        numbers
+            .filter(n -> n % 10 == 0)
+            .flatMap(n -> new SuperIterable<>(List.of(n, n + 1, n + 2)))
+            .forEvery(bh::consume);
+    }
+
+    @Benchmark
+    public long mapToIntSum()
+    {
+        return numbers.mapToInt(n -> n * 2).sum();
+    }
+}
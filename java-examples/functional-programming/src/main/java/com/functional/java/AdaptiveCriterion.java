@@ -0,0 +1,230 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A criterion that keeps re-planning itself from what it sees while it runs.
+ * See Criterion.adaptive.
+ *
+ * Like Criterion.compile, it normalizes the tree and evaluates it as a branching program
+ * with the and/or children ordered by pass rate and cost. Instead of a sample given up
+ * front, about one test in sampleEvery is a sampled one: it runs every leaf, not just the
+ * ones the current order reaches, so the pass rates are not skewed by short-circuiting,
+ * and times each of them. Every replanEvery samples the thread that took the last sample
+ * orders the tree again and swaps in a new program.
+ *
+ * Concurrent tests take no lock. Deciding to sample is a thread-local random draw, the
+ * counters are LongAdders, the program is an immutable object behind a volatile field
+ * that readers just load, and re-planning is done by whichever single thread wins a
+ * compare-and-set; the others carry on with the program they have.
+ *
+ * @param <E> The type of elements tested
+ */
+public final class AdaptiveCriterion<E> implements Criterion<E>
+{
+    // weight of the latest window against the estimates so far, so old behaviour fades out
+    private static final double DECAY = 0.5;
+
+    private final Criterion<E> original;
+    private final Criterion<E> normalized;
+    private final List<Criterion<E>> leaves;
+    private final Map<Criterion<E>, Integer> leafIndex = new IdentityHashMap<>();
+    private final LongAdder[] passes;
+    private final LongAdder[] nanos;
+    private final LongAdder samples = new LongAdder();
+    private final int sampleEvery;
+    private final long replanEvery;
+    private final AtomicBoolean replanning = new AtomicBoolean();
+    private volatile CriterionCompiler.Program<E> program;
+    private volatile long replans;
+
+    // written only by the thread holding replanning; volatile because sample() reads it to decide when to re-plan
+    private volatile long samplesAtLastPlan;
+    // owned by the thread holding replanning
+    private final long[] passesAtLastPlan;
+    private final long[] nanosAtLastPlan;
+    private final double[] passRate;
+    private final double[] cost;
+
+    AdaptiveCriterion(Criterion<E> original, int sampleEvery, long replanEvery)
+    {
+        if (sampleEvery < 1 || replanEvery < 1) {
+            throw new IllegalArgumentException("sampleEvery and replanEvery must be positive");
+        }
+        this.original = original;
+        this.normalized = CriterionCompiler.normalize(original, false);
+        this.leaves = new ArrayList<>();
+        collectLeaves(normalized);
+        int n = leaves.size();
+        this.passes = new LongAdder[n];
+        this.nanos = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            passes[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+        }
+        this.passesAtLastPlan = new long[n];
+        this.nanosAtLastPlan = new long[n];
+        this.passRate = new double[n];
+        this.cost = new double[n];
+        this.sampleEvery = sampleEvery;
+        this.replanEvery = replanEvery;
+        // no data yet: leave the children in the order they were written in
+        this.program = new CriterionCompiler.Program<>(normalized);
+    }
+
+    private void collectLeaves(Criterion<E> node) {
+        List<Criterion<E>> children = node instanceof CriterionTree.And ? ((CriterionTree.And<E>) node).children()
+            : node instanceof CriterionTree.Or ? ((CriterionTree.Or<E>) node).children()
+            : null;
+        if (children == null) {
+            if (!leafIndex.containsKey(node)) {
+                leafIndex.put(node, leaves.size());
+                leaves.add(node);
+            }
+        } else {
+            children.forEach(this::collectLeaves);
+        }
+    }
+
+    @Override
+    public boolean test(E e) {
+        if (sampleEvery == 1 || ThreadLocalRandom.current().nextInt(sampleEvery) == 0) {
+            sample(e);
+        }
+        return program.test(e);
+    }
+
+    private void sample(E e) {
+        for (int i = 0; i < leaves.size(); i++) {
+            long start = System.nanoTime();
+            boolean passed = leaves.get(i).test(e);
+            nanos[i].add(System.nanoTime() - start);
+            if (passed) {
+                passes[i].increment();
+            }
+        }
+        samples.increment();
+        if (samples.sum() - samplesAtLastPlan >= replanEvery && replanning.compareAndSet(false, true)) {
+            try {
+                replan();
+            } finally {
+                replanning.set(false);
+            }
+        }
+    }
+
+    private void replan() {
+        long sampled = samples.sum();
+        long window = sampled - samplesAtLastPlan;
+        if (window < replanEvery) {
+            // another thread re-planned between our check and the compare-and-set
+            return;
+        }
+        for (int i = 0; i < leaves.size(); i++) {
+            long p = passes[i].sum();
+            long t = nanos[i].sum();
+            double windowPass = (double) (p - passesAtLastPlan[i]) / window;
+            double windowCost = (double) (t - nanosAtLastPlan[i]) / window;
+            passRate[i] = replans == 0 ? windowPass : DECAY * windowPass + (1 - DECAY) * passRate[i];
+            cost[i] = replans == 0 ? windowCost : DECAY * windowCost + (1 - DECAY) * cost[i];
+            passesAtLastPlan[i] = p;
+            nanosAtLastPlan[i] = t;
+        }
+        samplesAtLastPlan = sampled;
+        program = CriterionCompiler.plan(normalized, leaf -> passRate[leafIndex.get(leaf)], leaf -> cost[leafIndex.get(leaf)]);
+        replans++;
+    }
+
+    /**
+     * @return The criterion this one was made from
+     */
+    public Criterion<E> original() {
+        return original;
+    }
+
+    /**
+     * @return The normalized tree in the order it is evaluated in right now
+     */
+    public Criterion<E> current() {
+        return program.tree();
+    }
+
+    /**
+     * @return How often the tree was re-planned so far
+     */
+    public long replans() {
+        return replans;
+    }
+
+    /**
+     * Takes a snapshot of what the samples say about every leaf so far.
+     *
+     * @return One entry per distinct leaf, in the order they were written in
+     */
+    public List<LeafStats> statistics() {
+        long sampled = samples.sum();
+        List<LeafStats> stats = new ArrayList<>(leaves.size());
+        for (int i = 0; i < leaves.size(); i++) {
+            stats.add(new LeafStats(String.valueOf(leaves.get(i)), sampled, passes[i].sum(), nanos[i].sum()));
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return "adaptive " + current();
+    }
+
+    /**
+     * The sampled counts of one leaf.
+     */
+    public static final class LeafStats
+    {
+        private final String leaf;
+        private final long samples;
+        private final long passes;
+        private final long nanos;
+
+        LeafStats(String leaf, long samples, long passes, long nanos)
+        {
+            this.leaf = leaf;
+            this.samples = samples;
+            this.passes = passes;
+            this.nanos = nanos;
+        }
+
+        public String leaf() {
+            return leaf;
+        }
+
+        public long samples() {
+            return samples;
+        }
+
+        /**
+         * @return The fraction of sampled elements the leaf passed, or NaN before the first sample
+         */
+        public double passRate() {
+            return samples == 0 ? Double.NaN : (double) passes / samples;
+        }
+
+        /**
+         * @return The average time of one test of the leaf, or NaN before the first sample
+         */
+        public double nanosPerTest() {
+            return samples == 0 ? Double.NaN : (double) nanos / samples;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: passes %.1f%% of %,d samples, %.0f ns per test",
+                leaf, passRate() * 100, samples, nanosPerTest());
+        }
+    }
+}
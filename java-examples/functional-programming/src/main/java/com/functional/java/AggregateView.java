@@ -0,0 +1,414 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.OptionalDouble;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An aggregate over the elements of an IndexedCollection that is updated incrementally,
+ * like a materialized view in a database:
+ *
+ *   IndexedCollection<User> users = new IndexedCollection<>();
+ *   AggregateView.CountBy<User, String> perCity = users.addView(AggregateView.countBy(User::getCity));
+ *   users.add(alice);            // perCity.get("London") goes up by one
+ *   users.remove(bob);           // and down by one, without looking at the other users
+ *
+ * Each view remembers what every row contributed (its key, its value), so on an update
+ * it can take back the old contribution even though the element was changed in place.
+ * Adding, removing or updating an element costs O(1) for count and sum, O(log n) for
+ * min/max and one hash lookup for the groupings, whatever the size of the collection.
+ *
+ * A view belongs to one collection; create a new one for every addView call. Its getters
+ * take the collection's read lock, so they can be polled from other threads while the
+ * collection changes, see IndexedCollection.
+ *
+ * @param <E> The type of elements aggregated
+ */
+public abstract class AggregateView<E>
+{
+    private static final Lock UNATTACHED = new ReentrantReadWriteLock().readLock();
+
+    private volatile IndexedCollection<E> source;
+
+    AggregateView()
+    {
+    }
+
+    public static <E> Count<E> count() {
+        return new Count<>();
+    }
+
+    public static <E> Sum<E> sum(ToDoubleFunction<? super E> value) {
+        return new Sum<>(value);
+    }
+
+    public static <E> MinMax<E> minMax(ToDoubleFunction<? super E> value) {
+        return new MinMax<>(value);
+    }
+
+    public static <E, K> CountBy<E, K> countBy(Function<? super E, ? extends K> key) {
+        return new CountBy<>(key);
+    }
+
+    public static <E, K> GroupBy<E, K> groupBy(Function<? super E, ? extends K> key) {
+        return new GroupBy<>(key);
+    }
+
+    void attach(IndexedCollection<E> collection) {
+        if (source != null) {
+            throw new IllegalStateException("View is already registered with a collection");
+        }
+        source = collection;
+    }
+
+    IndexedCollection<E> source() {
+        return source;
+    }
+
+    /**
+     * The lock readers of the view hold, so they never see a change half applied.
+     */
+    Lock readLock() {
+        IndexedCollection<E> collection = source;
+        return collection == null ? UNATTACHED : collection.readLock();
+    }
+
+    /**
+     * Applies the contribution of a row that was added, or re-added after an update.
+     */
+    abstract void add(int row, E e);
+
+    /**
+     * Takes back the contribution the row made when it was last added.
+     */
+    abstract void remove(int row);
+
+    /**
+     * The number of elements, i.e. userList.size() kept up to date.
+     */
+    public static final class Count<E> extends AggregateView<E>
+    {
+        private long count;
+
+        Count()
+        {
+        }
+
+        public long get() {
+            readLock().lock();
+            try {
+                return count;
+            } finally {
+                readLock().unlock();
+            }
+        }
+
+        @Override
+        void add(int row, E e) {
+            count++;
+        }
+
+        @Override
+        void remove(int row) {
+            count--;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + get();
+        }
+    }
+
+    /**
+     * The sum of a numeric attribute. Additions and removals are Kahan-compensated, so
+     * rounding errors do not pile up over millions of updates.
+     *
+     * Infinities and NaN are counted rather than added: one of them would turn the
+     * compensated sum into NaN for good, since taking it back computes Inf - Inf. The
+     * result is derived from the counts, so it is finite again once they are removed.
+     */
+    public static final class Sum<E> extends AggregateView<E>
+    {
+        private final ToDoubleFunction<? super E> value;
+        private double[] valueOf = new double[16];
+        private double sum;
+        private double compensation;
+        private long positiveInfinities;
+        private long negativeInfinities;
+        private long nans;
+
+        Sum(ToDoubleFunction<? super E> value)
+        {
+            this.value = value;
+        }
+
+        public double get() {
+            readLock().lock();
+            try {
+                if (nans > 0 || (positiveInfinities > 0 && negativeInfinities > 0)) {
+                    return Double.NaN;
+                }
+                if (positiveInfinities > 0) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                return negativeInfinities > 0 ? Double.NEGATIVE_INFINITY : sum;
+            } finally {
+                readLock().unlock();
+            }
+        }
+
+        @Override
+        void add(int row, E e) {
+            double v = value.applyAsDouble(e);
+            if (row >= valueOf.length) {
+                valueOf = Arrays.copyOf(valueOf, Math.max(row + 1, valueOf.length * 2));
+            }
+            valueOf[row] = v;
+            accumulate(v, 1);
+        }
+
+        @Override
+        void remove(int row) {
+            accumulate(valueOf[row], -1);
+        }
+
+        /**
+         * @param sign 1 to add v, -1 to take it back
+         */
+        private void accumulate(double v, int sign) {
+            if (Double.isNaN(v)) {
+                nans += sign;
+            } else if (v == Double.POSITIVE_INFINITY) {
+                positiveInfinities += sign;
+            } else if (v == Double.NEGATIVE_INFINITY) {
+                negativeInfinities += sign;
+            } else {
+                double y = sign * v - compensation;
+                double t = sum + y;
+                compensation = (t - sum) - y;
+                sum = t;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "sum=" + get();
+        }
+    }
+
+    /**
+     * The smallest and largest value of a numeric attribute, ordered as by Double.compare.
+     * Values are kept in a sorted multiset, so removing the current minimum does not
+     * require a scan to find the next one.
+     */
+    public static final class MinMax<E> extends AggregateView<E>
+    {
+        private final ToDoubleFunction<? super E> value;
+        private final NavigableMap<Double, int[]> counts = new TreeMap<>();
+        private double[] valueOf = new double[16];
+
+        MinMax(ToDoubleFunction<? super E> value)
+        {
+            this.value = value;
+        }
+
+        public OptionalDouble min() {
+            readLock().lock();
+            try {
+                return counts.isEmpty() ? OptionalDouble.empty() : OptionalDouble.of(counts.firstKey());
+            } finally {
+                readLock().unlock();
+            }
+        }
+
+        public OptionalDouble max() {
+            readLock().lock();
+            try {
+                return counts.isEmpty() ? OptionalDouble.empty() : OptionalDouble.of(counts.lastKey());
+            } finally {
+                readLock().unlock();
+            }
+        }
+
+        @Override
+        void add(int row, E e) {
+            double v = value.applyAsDouble(e);
+            if (row >= valueOf.length) {
+                valueOf = Arrays.copyOf(valueOf, Math.max(row + 1, valueOf.length * 2));
+            }
+            valueOf[row] = v;
+            counts.computeIfAbsent(v, ignored -> new int[1])[0]++;
+        }
+
+        @Override
+        void remove(int row) {
+            Double v = valueOf[row];
+            int[] count = counts.get(v);
+            if (--count[0] == 0) {
+                counts.remove(v);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "min=" + min() + ", max=" + max();
+        }
+    }
+
+    /**
+     * The number of elements per key, i.e. groupingBy(key, counting()) kept up to date.
+     * Keys whose count drops to zero disappear.
+     */
+    public static final class CountBy<E, K> extends AggregateView<E>
+    {
+        private final Function<? super E, ? extends K> key;
+        private final Map<K, long[]> counts = new HashMap<>();
+        private Object[] keyOf = new Object[16];
+
+        CountBy(Function<? super E, ? extends K> key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * @return The number of elements with the key, 0 if there are none
+         */
+        public long get(K k) {
+            readLock().lock();
+            try {
+                long[] count = counts.get(k);
+                return count == null ? 0 : count[0];
+            } finally {
+                readLock().unlock();
+            }
+        }
+
+        /**
+         * @return A snapshot of all counts
+         */
+        public Map<K, Long> asMap() {
+            Map<K, Long> snapshot = new HashMap<>();
+            readLock().lock();
+            try {
+                counts.forEach((k, count) -> snapshot.put(k, count[0]));
+            } finally {
+                readLock().unlock();
+            }
+            return snapshot;
+        }
+
+        @Override
+        void add(int row, E e) {
+            K k = key.apply(e);
+            if (row >= keyOf.length) {
+                keyOf = Arrays.copyOf(keyOf, Math.max(row + 1, keyOf.length * 2));
+            }
+            keyOf[row] = k;
+            counts.computeIfAbsent(k, ignored -> new long[1])[0]++;
+        }
+
+        @Override
+        void remove(int row) {
+            Object k = keyOf[row];
+            keyOf[row] = null;
+            long[] count = counts.get(k);
+            if (--count[0] == 0) {
+                counts.remove(k);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return asMap().toString();
+        }
+    }
+
+    /**
+     * The elements per key, i.e. groupingBy(key) kept up to date. Each group is a set of
+     * row numbers; the elements are looked up only when a group is read.
+     */
+    public static final class GroupBy<E, K> extends AggregateView<E>
+    {
+        private final Function<? super E, ? extends K> key;
+        private final Map<K, BitSet> groups = new HashMap<>();
+        private Object[] keyOf = new Object[16];
+
+        GroupBy(Function<? super E, ? extends K> key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * @return The elements with the key, in row order; empty if there are none
+         */
+        public List<E> get(K k) {
+            readLock().lock();
+            try {
+                BitSet rows = groups.get(k);
+                return rows == null ? Collections.emptyList() : members(rows);
+            } finally {
+                readLock().unlock();
+            }
+        }
+
+        /**
+         * @return A snapshot of all groups
+         */
+        public Map<K, List<E>> asMap() {
+            Map<K, List<E>> snapshot = new LinkedHashMap<>();
+            readLock().lock();
+            try {
+                groups.forEach((k, rows) -> snapshot.put(k, members(rows)));
+            } finally {
+                readLock().unlock();
+            }
+            return snapshot;
+        }
+
+        private List<E> members(BitSet rows) {
+            List<E> members = new ArrayList<>(rows.cardinality());
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                members.add(source().element(row));
+            }
+            return Collections.unmodifiableList(members);
+        }
+
+        @Override
+        void add(int row, E e) {
+            K k = key.apply(e);
+            if (row >= keyOf.length) {
+                keyOf = Arrays.copyOf(keyOf, Math.max(row + 1, keyOf.length * 2));
+            }
+            keyOf[row] = k;
+            groups.computeIfAbsent(k, ignored -> new BitSet()).set(row);
+        }
+
+        @Override
+        void remove(int row) {
+            Object k = keyOf[row];
+            keyOf[row] = null;
+            BitSet rows = groups.get(k);
+            rows.clear(row);
+            if (rows.isEmpty()) {
+                groups.remove(k);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return asMap().toString();
+        }
+    }
+}
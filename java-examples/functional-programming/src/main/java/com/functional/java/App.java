@@ -1,7 +1,14 @@
 package com.functional.java;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 import java.util.function.ToIntFunction;
 
 
@@ -71,6 +78,50 @@ public class App
         System.out.println("\nNOT (Red AND Toyota) - using negate:");
         showAll(cars, getColorCriterion("RED").andCriterion(c -> "Toyota".equals(c.getBrand())).negate());
 
+        System.out.println("\n=== Testing Criterion.compile ===");
+        Criterion<Car> redOrBlueToyota = Criterion.named("RED", getColorCriterion("RED"))
+            .orCriterion(Criterion.named("BLUE", getColorCriterion("BLUE")))
+            .andCriterion(Criterion.named("Toyota", c -> "Toyota".equals(c.getBrand())))
+            .negate();
+        Criterion<Car> compiled = redOrBlueToyota.compile(cars);
+        System.out.println("Written as: " + redOrBlueToyota);
+        System.out.println("Runs as:    " + compiled);
+        showAll(cars, compiled);
+
+        System.out.println("\n=== Testing Criterion.adaptive ===");
+        AdaptiveCriterion<Car> adaptive = Criterion.named("Toyota", (Car c) -> "Toyota".equals(c.getBrand()))
+            .andCriterion(Criterion.named("RED", getColorCriterion("RED")))
+            .adaptive(1, 4);
+        for (int round = 0; round < 10; round++) {
+            cars.forEach(adaptive::test);
+        }
+        System.out.println("Written as: " + adaptive.original());
+        System.out.println("Runs as:    " + adaptive.current() + " after " + adaptive.replans() + " re-plans");
+        adaptive.statistics().forEach(System.out::println);
+        showAll(cars, adaptive);
+
+        System.out.println("\n=== Testing Memo ===");
+        Memo<String, String> brandInfo = Memo.of(brand -> {
+            System.out.println("  looking up " + brand);  // stands in for a slow lookup
+            return brand == null ? "unknown" : brand.toUpperCase();
+        }, 100, Memo.Policy.TINY_LFU);
+        new SuperIterable<>(cars).map(brandInfo.on(Car::getBrand)).forEvery(info -> System.out.println("Brand info: " + info));
+        Criterion<Car> domestic = Criterion.memoized(Car::getBrand, brand -> "Ford".equals(brand), 100);
+        showAll(cars, domestic);
+        System.out.println("Lookups: " + brandInfo.stats());
+
+        System.out.println("\n=== Testing IndexedCollection ===");
+        Function<Car, String> colorKey = Car::getColor;
+        ToDoubleFunction<Car> gasKey = Car::getGasLevel;
+        IndexedCollection<Car> indexedCars = new IndexedCollection<Car>()
+            .addHashIndex("color", colorKey)
+            .addSortedIndex("gas", gasKey);
+        cars.forEach(indexedCars::add);
+        Criterion<Car> redAndFull = Criterion.in(colorKey, Arrays.asList("RED"))
+            .andCriterion(Criterion.greaterThan(gasKey, 10.0));
+        System.out.println("Plan: " + indexedCars.explain(redAndFull));
+        indexedCars.query(redAndFull).forEach(System.out::println);
+
         System.out.println("\n=== Testing GasComparator ===");
         System.out.println("\nCars sorted by gas level (ascending):");
         List<Car> sortedByGas = new ArrayList<>(cars);
@@ -82,9 +133,24 @@ public class App
         sortedByGasDesc.sort(new GasComparator().reversed());
         sortedByGasDesc.forEach(System.out::println);
 
+        System.out.println("\nCars sorted by gas level with KeySort (keys read once, radix sorted):");
+        KeySort.sortByKey(cars, Car::getGasLevel).forEach(System.out::println);
+
+        System.out.println("\nThe 2 cars with the least gas (bounded heap, no full sort):");
+        KeySort.bottomK(cars, Car::getGasLevel, 2).forEach(System.out::println);
+
         System.out.println("\nCars with gas level > 10.0:");
         showAll(cars, c -> c.getGasLevel() > 10.0);
 
+        System.out.println("\nAny RED Toyota under 5 gallons? (stops at the first match):");
+        System.out.println(new SuperIterable<>(cars).anyMatch(
+            c -> "RED".equals(c.getColor()) && "Toyota".equals(c.getBrand()) && c.getGasLevel() < 5.0));
+
+        System.out.println("\nGas level statistics (primitive doubles, no boxing):");
+        DoubleSuperIterable gasLevels = new SuperIterable<>(cars).mapToDouble(Car::getGasLevel);
+        System.out.println("total=" + gasLevels.sum() + " min=" + gasLevels.min().getAsDouble()
+            + " max=" + gasLevels.max().getAsDouble() + " average=" + gasLevels.average().getAsDouble());
+
         System.out.println("\nCar with minimum gas level:");
         Car minGasCar = cars.stream().min(new GasComparator()).orElse(null);
         if (minGasCar != null) {
@@ -97,6 +163,42 @@ public class App
             System.out.println(maxGasCar);
         }
 
+        System.out.println("\n=== Testing CarStore (columnar storage) ===");
+        CarStore store = CarStore.of(cars);
+        System.out.println("\nRed or Green cars, matched on color codes:");
+        store.cars(store.selectColors("RED", "GREEN")).forEvery(System.out::println);
+        System.out.println("\nToyota cars sorted by gas level:");
+        store.cars(store.sortByGas(store.select(c -> "Toyota".equals(c.getBrand())))).forEvery(System.out::println);
+
+        System.out.println("\n=== Testing MappedCarFile (memory-mapped, parsed lazily) ===");
+        try {
+            Path carFile = Files.createTempFile("cars", ".csv");
+            try {
+                MappedCarFile.write(carFile, cars);
+                System.out.println("Total gas of RED cars read from " + carFile.getFileName() + ": "
+                    + MappedCarFile.open(carFile).flyweight().cars()
+                        .filter(c -> "RED".equals(c.getColor()))
+                        .mapToDouble(Car::getGasLevel)
+                        .sum());
+            } finally {
+                Files.deleteIfExists(carFile);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write the car file: " + e.getMessage());
+        }
+
+        System.out.println("\n=== Testing CarWriter / CarReader (binary checkpoint) ===");
+        try {
+            ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+            try (CarWriter writer = new CarWriter(checkpoint)) {
+                writer.writeAll(new SuperIterable<>(cars).filter(c -> c.getGasLevel() > 10.0));
+            }
+            System.out.println(checkpoint.size() + " bytes for the cars with more than 10 gallons:");
+            new CarReader(new ByteArrayInputStream(checkpoint.toByteArray())).forEachRemaining(System.out::println);
+        } catch (IOException e) {
+            System.out.println("Could not write the checkpoint: " + e.getMessage());
+        }
+
         // ===== COMPARATOR EXPLANATION =====
         // Create Bert's car with ONLY 2.0 gallons of gas
         Car bertCar = new Car();
@@ -204,7 +306,7 @@ public class App
     private static Criterion<Car> getColorCriterion(String... colors) {
        //implement the Criterion for this color
 
-        return c -> Arrays.stream(colors).anyMatch(color -> color.equals(c.getColor()));
+        return Criterion.in(Car::getColor, Arrays.asList(colors));
     }
 
     private static List<Car> createTestCars() {
@@ -264,7 +366,7 @@ public class App
 
     public static Criterion<Car> getInverse(Criterion<Car> crit) {
 
-        return e -> !crit.test(e);
+        return crit.negate();
 
     }
 
@@ -299,8 +401,22 @@ class Car {
     private String color;
     private String brand;
     private double gasLevel; // Gas level in gallons or liters
-    private List<String> passengers = new ArrayList<>();
-    private List<String> trunk = new ArrayList<>();
+    private List<String> passengers;
+    private List<String> trunk;
+
+    public Car()
+    {
+        this(new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * Lets views such as CarStore rows skip the two empty lists every plain Car starts with.
+     */
+    Car(List<String> passengers, List<String> trunk)
+    {
+        this.passengers = passengers;
+        this.trunk = trunk;
+    }
 
     public String getColor()
     {
@@ -350,27 +466,31 @@ class Car {
 
     @Override
     public String toString() {
-        return "Car{color='" + color + "', brand='" + brand + "', gasLevel=" + gasLevel + ", passengers=" + passengers + ", trunk=" + trunk + "}";
+        return "Car{color='" + getColor() + "', brand='" + getBrand() + "', gasLevel=" + getGasLevel() + ", passengers=" + getPassengers() + ", trunk=" + getTrunk() + "}";
     }
 
+    /**
+     * Creates a car whose passenger and trunk lists are PersistentVectors: copied from the
+     * arguments once, immutable afterwards, and safe to share between cars and threads.
+     */
     public static Car withGasColorPassengers(double gas, String color, String brand, String... passengers)
     {
-        Car car = new Car();
+        Car car = new Car(PersistentVector.empty(), PersistentVector.empty());
         car.setGasLevel(gas);
         car.setColor(color);
         car.setBrand(brand);
-        car.setPassengers(Arrays.asList(passengers));
+        car.setPassengers(PersistentVector.of(passengers));
         return car;
     }
 
     public static Car withGasColorPassengersAndTrunk(double gas, String color, String brand, String[] passengers, String[] trunk)
     {
-        Car car = new Car();
+        Car car = new Car(PersistentVector.empty(), PersistentVector.empty());
         car.setGasLevel(gas);
         car.setColor(color);
         car.setBrand(brand);
-        car.setPassengers(Arrays.asList(passengers));
-        car.setTrunk(Arrays.asList(trunk));
+        car.setPassengers(PersistentVector.of(passengers));
+        car.setTrunk(PersistentVector.of(trunk));
         return car;
     }
 }
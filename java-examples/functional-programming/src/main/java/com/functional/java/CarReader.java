@@ -0,0 +1,208 @@
+package com.functional.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads cars written by CarWriter, one record at a time. See CarWriter for the format.
+ *
+ * A reader is a single-pass Iterator over its input and closes the input once the last
+ * car has been read. read(Path) wraps a file as a SuperIterable that opens a new reader
+ * for every iteration, so a checkpoint can be filtered without loading it first.
+ * Read errors surface as UncheckedIOException, malformed input as IllegalStateException.
+ */
+public class CarReader implements Iterator<Car>, Closeable
+{
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+    private boolean closed;
+
+    public CarReader(InputStream in) throws IOException
+    {
+        this.in = in;
+        for (byte b : CarWriter.MAGIC) {
+            if (!fill() || buffer[position++] != b) {
+                in.close();
+                throw new IllegalStateException("Not a car stream: bad header");
+            }
+        }
+    }
+
+    public CarReader(ReadableByteChannel channel) throws IOException
+    {
+        this(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Returns the cars of a file written by CarWriter, read lazily on every iteration.
+     * The terminal operations of the SuperIterable close the file even when they stop
+     * early; an iterator taken with iterator() and abandoned before the end leaves its
+     * file open until the reader is garbage collected.
+     */
+    public static SuperIterable<Car> read(Path path)
+    {
+        return new SuperIterable<>(() -> {
+            try {
+                return new CarReader(Files.newInputStream(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (fill()) {
+                return true;
+            }
+            close();
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Car next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            Car car = new Car();
+            int flags = readByte();
+            if ((flags & CarWriter.GAS_IN_HUNDREDTHS) != 0) {
+                long zigzag = varint();
+                car.setGasLevel(((zigzag >>> 1) ^ -(zigzag & 1)) / 100.0);
+            } else {
+                long bits = 0;
+                for (int shift = 0; shift < 64; shift += 8) {
+                    bits |= (long) readByte() << shift;
+                }
+                car.setGasLevel(Double.longBitsToDouble(bits));
+            }
+            car.setColor(reference());
+            car.setBrand(reference());
+            list(car.getPassengers());
+            list(car.getTrunk());
+            return car;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String reference() throws IOException {
+        long code = varint();
+        if (code == CarWriter.NULL) {
+            return null;
+        }
+        if (code == CarWriter.NEW_ENTRY) {
+            String value = literal();
+            dictionary.add(value);
+            return value;
+        }
+        long entry = code - CarWriter.FIRST_ENTRY;
+        if (entry >= dictionary.size()) {
+            throw new IllegalStateException("Car stream refers to unknown dictionary entry " + entry);
+        }
+        return dictionary.get((int) entry);
+    }
+
+    private void list(List<String> items) throws IOException {
+        long size = varint();
+        for (long i = 0; i < size; i++) {
+            items.add(literal());
+        }
+    }
+
+    private String literal() throws IOException {
+        long length = varint() - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Car stream has a string of " + length + " bytes");
+        }
+        int n = (int) length;
+        if (limit - position >= n) {
+            String value = new String(buffer, position, n, StandardCharsets.UTF_8);
+            position += n;
+            return value;
+        }
+        byte[] bytes = new byte[n];
+        int copied = limit - position;
+        System.arraycopy(buffer, position, bytes, 0, copied);
+        position = limit;
+        while (copied < n) {
+            int read = in.read(bytes, copied, n - copied);
+            if (read < 0) {
+                throw truncated();
+            }
+            copied += read;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long varint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Car stream has a varint longer than 64 bits");
+    }
+
+    private int readByte() throws IOException {
+        if (!fill()) {
+            throw truncated();
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        position = 0;
+        limit = Math.max(0, in.read(buffer));
+        return limit > 0;
+    }
+
+    private static IllegalStateException truncated() {
+        return new IllegalStateException("Car stream ends in the middle of a record");
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!closed) {
+            closed = true;
+            in.close();
+        }
+    }
+}
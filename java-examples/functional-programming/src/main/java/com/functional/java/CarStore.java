@@ -0,0 +1,421 @@
+package com.functional.java;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.DoublePredicate;
+
+/**
+ * Column-oriented (struct-of-arrays) storage for many cars.
+ * Instead of one Car object with its own Strings and two ArrayLists per car, every
+ * attribute lives in one array indexed by row:
+ * - gas levels in a double[]
+ * - colors and brands as int codes into a small dictionary of distinct values
+ * - passengers and trunk items packed into one shared array each, with an offsets
+ *   array telling where the items of every row start and end
+ *
+ * Scans, Criterion filters and gas level sorting work on the columns and hand back
+ * row numbers. A read-only Car view of a row is created only when asked for.
+ */
+public class CarStore implements Iterable<Car>
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Dictionary colors = new Dictionary();
+    private final Dictionary brands = new Dictionary();
+    private final Items passengers = new Items();
+    private final Items trunk = new Items();
+    private double[] gasLevels = new double[INITIAL_CAPACITY];
+    private int[] colorCodes = new int[INITIAL_CAPACITY];
+    private int[] brandCodes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public static CarStore of(Iterable<Car> cars)
+    {
+        CarStore store = new CarStore();
+        for (Car car : cars) {
+            store.add(car);
+        }
+        return store;
+    }
+
+    /**
+     * Copies a car into the columns. Later changes to the car are not seen by the store.
+     *
+     * @param car The car to copy
+     * @return The row number of the new car
+     */
+    public int add(Car car) {
+        return add(car.getGasLevel(), car.getColor(), car.getBrand(), car.getPassengers(), car.getTrunk());
+    }
+
+    public int add(double gasLevel, String color, String brand, List<String> carPassengers, List<String> carTrunk) {
+        if (size == gasLevels.length) {
+            int capacity = size + (size >> 1);
+            gasLevels = Arrays.copyOf(gasLevels, capacity);
+            colorCodes = Arrays.copyOf(colorCodes, capacity);
+            brandCodes = Arrays.copyOf(brandCodes, capacity);
+        }
+        gasLevels[size] = gasLevel;
+        colorCodes[size] = colors.encode(color);
+        brandCodes[size] = brands.encode(brand);
+        passengers.add(size, carPassengers);
+        trunk.add(size, carTrunk);
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double gasLevel(int row) {
+        return gasLevels[checkRow(row)];
+    }
+
+    public String color(int row) {
+        return colors.decode(colorCodes[checkRow(row)]);
+    }
+
+    public String brand(int row) {
+        return brands.decode(brandCodes[checkRow(row)]);
+    }
+
+    public List<String> passengers(int row) {
+        return passengers.get(checkRow(row));
+    }
+
+    public List<String> trunk(int row) {
+        return trunk.get(checkRow(row));
+    }
+
+    /**
+     * Returns a read-only Car view of a row. The view reads the columns on every call
+     * and carries no lists or strings of its own.
+     *
+     * @param row The row number
+     * @return A Car backed by this store
+     */
+    public Car get(int row) {
+        return new Row(this, checkRow(row));
+    }
+
+    /**
+     * Copies the gas level column into a primitive buffer for aggregation.
+     *
+     * @return The gas levels of all rows, in row order
+     */
+    public DoubleSuperIterable gasLevels() {
+        return new DoubleSuperIterable(Arrays.copyOf(gasLevels, size), size);
+    }
+
+    /**
+     * Tests every row against a Criterion. The rows are presented to the criterion through
+     * one reused Car view, so the criterion must not keep the car it is given.
+     *
+     * @param crit The criterion to test
+     * @return The matching row numbers in ascending order
+     */
+    public int[] select(Criterion<Car> crit) {
+        Row cursor = new Row(this, 0);
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            cursor.row = row;
+            if (crit.test(cursor)) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Finds rows of any of the given colors by comparing int codes, never Strings.
+     *
+     * @param wanted The colors to look for
+     * @return The matching row numbers in ascending order
+     */
+    public int[] selectColors(String... wanted) {
+        boolean[] match = new boolean[colors.size()];
+        for (String color : wanted) {
+            int code = colors.find(color);
+            if (code >= 0) {
+                match[code] = true;
+            }
+        }
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int code = colorCodes[row];
+            if (code >= 0 && match[code]) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    public int[] selectGasLevel(DoublePredicate pred) {
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (pred.test(gasLevels[row])) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Orders all rows by gas level, lowest first, like sorting a List of cars with GasComparator.
+     *
+     * @return Every row number, ordered by gas level
+     */
+    public int[] rowsSortedByGas() {
+        int[] rows = new int[size];
+        Arrays.setAll(rows, row -> row);
+        return sortByGas(rows);
+    }
+
+    /**
+     * Orders the given rows by gas level, lowest first. The gas levels of the rows are
+     * copied into one double[] and sorted with KeySort, without any Car or boxed value.
+     *
+     * @param rows Row numbers, e.g. the result of select
+     * @return A new array with the same rows ordered by gas level
+     */
+    public int[] sortByGas(int[] rows) {
+        int[] order = KeySort.sortedIndices(gasLevelsOf(rows));
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = rows[order[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Finds the k rows with the least gas, lowest first, without sorting the whole column.
+     *
+     * @param k How many rows to return at most
+     * @return Row numbers ordered by gas level
+     */
+    public int[] rowsWithLowestGas(int k) {
+        return KeySort.bottomK(Arrays.copyOf(gasLevels, size), k);
+    }
+
+    /**
+     * Finds the k rows with the most gas, highest first, without sorting the whole column.
+     *
+     * @param k How many rows to return at most
+     * @return Row numbers ordered by gas level, descending
+     */
+    public int[] rowsWithHighestGas(int k) {
+        return KeySort.topK(Arrays.copyOf(gasLevels, size), k);
+    }
+
+    private double[] gasLevelsOf(int[] rows) {
+        double[] keys = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = gasLevels[checkRow(rows[i])];
+        }
+        return keys;
+    }
+
+    /**
+     * Turns row numbers back into cars, e.g. to print the result of select.
+     *
+     * @param rows Row numbers of this store
+     * @return A SuperIterable of Car views, in the order of the given rows
+     */
+    public SuperIterable<Car> cars(int[] rows) {
+        return new SuperIterable<>(() -> new Iterator<Car>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows.length;
+            }
+
+            @Override
+            public Car next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(rows[next++]);
+            }
+        });
+    }
+
+    @Override
+    public Iterator<Car> iterator()
+    {
+        return new Iterator<Car>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public Car next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new Row(CarStore.this, row++);
+            }
+        };
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " outside of store with " + size + " cars");
+        }
+        return row;
+    }
+
+    /**
+     * Maps each distinct String to a small int code. null is encoded as -1.
+     */
+    private static final class Dictionary
+    {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[INITIAL_CAPACITY];
+
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                if (code == values.length) {
+                    values = Arrays.copyOf(values, code * 2);
+                }
+                values[code] = value;
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        int find(String value) {
+            Integer code = value == null ? null : codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values[code];
+        }
+
+        int size() {
+            return codes.size();
+        }
+    }
+
+    /**
+     * A list column: the items of all rows packed into one array, where the items
+     * of row r are values[offsets[r]] up to (excluding) values[offsets[r + 1]].
+     */
+    private static final class Items
+    {
+        private String[] values = new String[INITIAL_CAPACITY];
+        private int[] offsets = new int[INITIAL_CAPACITY + 1];
+
+        void add(int row, List<String> items) {
+            if (row + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            int start = offsets[row];
+            int end = start + items.size();
+            if (end > values.length) {
+                values = Arrays.copyOf(values, Math.max(end, values.length * 2));
+            }
+            for (String item : items) {
+                values[start++] = item;
+            }
+            offsets[row + 1] = end;
+        }
+
+        List<String> get(int row) {
+            int start = offsets[row];
+            int end = offsets[row + 1];
+            if (start == end) {
+                return Collections.emptyList();
+            }
+            // values is only ever appended to, so this view stays valid after the array grows
+            return Collections.unmodifiableList(Arrays.asList(values).subList(start, end));
+        }
+    }
+
+    /**
+     * A read-only Car that reads one row of the store.
+     */
+    private static final class Row extends Car
+    {
+        private final CarStore store;
+        private int row;
+
+        Row(CarStore store, int row)
+        {
+            super(Collections.emptyList(), Collections.emptyList());
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override
+        public String getColor() {
+            return store.colors.decode(store.colorCodes[row]);
+        }
+
+        @Override
+        public String getBrand() {
+            return store.brands.decode(store.brandCodes[row]);
+        }
+
+        @Override
+        public double getGasLevel() {
+            return store.gasLevels[row];
+        }
+
+        @Override
+        public List<String> getPassengers() {
+            return store.passengers.get(row);
+        }
+
+        @Override
+        public List<String> getTrunk() {
+            return store.trunk.get(row);
+        }
+
+        @Override
+        public void setColor(String color) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBrand(String brand) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setGasLevel(double gasLevel) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setPassengers(List<String> passengers) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setTrunk(List<String> trunk) {
+            throw readOnly();
+        }
+
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("Cars viewed from a CarStore are read-only");
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.functional.java;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes cars in a compact binary format, read back with CarReader.
+ *
+ * The stream starts with the 4 bytes 'C' 'A' 'R' 1, followed by one record per car:
+ * - a flags byte: bit 0 set when the gas level is stored in hundredths
+ * - the gas level: a zigzag varint of gasLevel * 100 when that is exact (15.5 takes
+ *   two bytes), otherwise the 8 bytes of the double
+ * - color and brand as dictionary references: varint 0 is null, 1 is a new string that
+ *   follows as a literal and gets the next dictionary number, n >= 2 is dictionary entry n - 2
+ * - passengers and trunk as packed lists: a varint count, then each item as a literal
+ * A literal is a varint of its UTF-8 length + 1 (0 for null) followed by the bytes;
+ * varints use 7 bits per byte, low bits first. There is no record count, so a writer
+ * can stream cars of unknown number and a reader stops at the end of the input.
+ *
+ * The dictionary lives only as long as one writer, so colors and brands are spelled
+ * out once per stream and cost a byte per car after that.
+ */
+public class CarWriter implements Closeable, Flushable
+{
+    static final byte[] MAGIC = {'C', 'A', 'R', 1};
+    static final int GAS_IN_HUNDREDTHS = 1;
+    static final int NULL = 0;
+    static final int NEW_ENTRY = 1;
+    static final int FIRST_ENTRY = 2;
+
+    private final OutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private byte[] buffer = new byte[8192];
+    private int count;
+
+    public CarWriter(OutputStream out) throws IOException
+    {
+        this.out = out;
+        for (byte b : MAGIC) {
+            buffer[count++] = b;
+        }
+    }
+
+    public CarWriter(WritableByteChannel channel) throws IOException
+    {
+        this(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Writes all cars to a new file, replacing any existing one.
+     *
+     * @param path The file to write
+     * @param cars The cars to write, e.g. the result of a SuperIterable pipeline
+     * @return The number of cars written
+     */
+    public static long write(Path path, Iterable<Car> cars) throws IOException
+    {
+        try (CarWriter writer = new CarWriter(Files.newOutputStream(path))) {
+            return writer.writeAll(cars);
+        }
+    }
+
+    /**
+     * @return The number of cars written
+     */
+    public long writeAll(Iterable<Car> cars) throws IOException {
+        long written = 0;
+        for (Car car : cars) {
+            write(car);
+            written++;
+        }
+        return written;
+    }
+
+    public void write(Car car) throws IOException {
+        ensure(9);
+        double gasLevel = car.getGasLevel();
+        long hundredths = Math.round(gasLevel * 100);
+        boolean compact = Math.abs(hundredths) < (1L << 52)
+            && Double.doubleToLongBits(hundredths / 100.0) == Double.doubleToLongBits(gasLevel);
+        buffer[count++] = (byte) (compact ? GAS_IN_HUNDREDTHS : 0);
+        if (compact) {
+            varint((hundredths << 1) ^ (hundredths >> 63));
+        } else {
+            long bits = Double.doubleToRawLongBits(gasLevel);
+            for (int shift = 0; shift < 64; shift += 8) {
+                buffer[count++] = (byte) (bits >>> shift);
+            }
+        }
+        reference(car.getColor());
+        reference(car.getBrand());
+        list(car.getPassengers());
+        list(car.getTrunk());
+    }
+
+    private void reference(String value) throws IOException {
+        if (value == null) {
+            varint(NULL);
+            return;
+        }
+        Integer entry = dictionary.get(value);
+        if (entry != null) {
+            varint(FIRST_ENTRY + entry);
+        } else {
+            dictionary.put(value, dictionary.size());
+            varint(NEW_ENTRY);
+            literal(value);
+        }
+    }
+
+    private void list(List<String> items) throws IOException {
+        varint(items.size());
+        for (String item : items) {
+            literal(item);
+        }
+    }
+
+    private void literal(String value) throws IOException {
+        if (value == null) {
+            varint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(bytes.length + 10);
+        varint(bytes.length + 1L);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void varint(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (count + bytes > buffer.length) {
+            drain();
+            if (bytes > buffer.length) {
+                buffer = new byte[bytes];
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.functional.java;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -64,6 +67,28 @@ public class CollectExample {
             );
         System.out.println("Stats: " + stats);
 
+        // The same pattern with reusable, mergeable accumulators: exact running statistics,
+        // approximate quantiles, distinct counts and most frequent elements, all in bounded memory
+        RunningStats lengths = words.parallelStream()
+            .mapToDouble(String::length)
+            .collect(RunningStats::new, RunningStats::accept, RunningStats::merge);
+        System.out.println("Length stats: " + lengths);
+
+        QuantileSketch lengthQuantiles = words.parallelStream()
+            .mapToDouble(String::length)
+            .collect(QuantileSketch::new, QuantileSketch::accept, QuantileSketch::merge);
+        System.out.println("Median length: " + lengthQuantiles.quantile(0.5));
+
+        HyperLogLog distinctFirstLetters = words.parallelStream()
+            .map(w -> w.charAt(0))
+            .collect(HyperLogLog::new, HyperLogLog::accept, HyperLogLog::merge);
+        System.out.println("Distinct first letters: " + distinctFirstLetters.estimate());
+
+        HeavyHitters<Integer> commonLengths = words.parallelStream()
+            .map(String::length)
+            .collect(() -> new HeavyHitters<>(10), HeavyHitters::accept, HeavyHitters::merge);
+        System.out.println("Most common lengths: " + commonLengths.top(2));
+
         System.out.println("\n=== Example 4: Parallel Stream execution ===");
         // The combiner is actually used here
         List<String> parallelList = words.parallelStream()
@@ -73,5 +98,19 @@ public class CollectExample {
                 ArrayList::addAll
             );
         System.out.println("Parallel collected list: " + parallelList);
+
+        System.out.println("\n=== Example 5: Joining without the StringBuilder merge ===");
+        // Example 2's combiner copies sb2 into sb1 at every merge; MoreCollectors.joining just links
+        // the partial results and writes the text once, here straight to a Writer
+        StringWriter out = new StringWriter();
+        try {
+            words.parallelStream()
+                .map(String::toLowerCase)
+                .collect(MoreCollectors.joining(", "))
+                .writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println("CSV written to a Writer: " + out);
     }
 }
@@ -36,28 +36,25 @@ public class CollectorOperators {
         System.out.println("Original Map: " + userMap);
 
         // Sort by User Name (Value)
-        Map<Integer, User> sortedByName = userMap.entrySet().stream()
-            .sorted(Entry.comparingByValue(Comparator.comparing(User::getName)))
-            .collect(Collectors.toMap(
-                Entry::getKey,
-                Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
-            ));
+        Map<Integer, User> sortedByName = MoreCollectors.sortedByValue(
+            userMap, Comparator.comparing(User::getName), userMap.size());
         
         System.out.println("Sorted by Name: " + sortedByName);
 
         // Sort by ID (Key) descending
         Map<Integer, User> sortedByIdDesc = userMap.entrySet().stream()
-            .sorted(Entry.comparingByKey(Comparator.reverseOrder()))
-            .collect(Collectors.toMap(
+            .collect(MoreCollectors.toSortedMap(
                 Entry::getKey,
                 Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
+                Entry.<Integer, User>comparingByKey(Comparator.reverseOrder())
             ));
         System.out.println("Sorted by ID (Desc): " + sortedByIdDesc);
 
+        // Leaderboard: only the 2 oldest users are kept and sorted, the rest are never ordered
+        Map<Integer, User> twoOldest = MoreCollectors.sortedByValue(
+            userMap, Comparator.comparingInt(User::getAge).reversed(), 2);
+        System.out.println("Two oldest: " + twoOldest);
+
         System.out.println("\n=== 2. GroupingBy Examples ===");
         
         List<User> userList = Arrays.asList(
@@ -79,6 +76,27 @@ public class CollectorOperators {
             
         System.out.println("Count by City: " + countByCity);
 
+        // Same counts from a parallel stream: one shared map of striped counters, no per-thread maps to merge
+        MoreCollectors.CountingMap<String> concurrentCountByCity = userList.parallelStream()
+            .collect(MoreCollectors.countingBy(User::getCity));
+
+        System.out.println("Count by City (concurrent): " + concurrentCountByCity
+            + ", London alone: " + concurrentCountByCity.getLong("London"));
+
+        // Keep the same aggregates up to date while users come and go, instead of re-running the streams
+        IndexedCollection<User> liveUsers = new IndexedCollection<>();
+        AggregateView.CountBy<User, String> liveCountByCity = liveUsers.addView(AggregateView.countBy(User::getCity));
+        AggregateView.GroupBy<User, String> liveUsersByCity = liveUsers.addView(AggregateView.groupBy(User::getCity));
+        AggregateView.MinMax<User> liveAges = liveUsers.addView(AggregateView.minMax(User::getAge));
+        userList.forEach(liveUsers::add);
+        User eve = new User("Eve", "Paris", 22);
+        liveUsers.add(eve);
+        liveUsers.remove(userList.get(0));
+
+        System.out.println("Live count by City after Eve joined and Alice left: " + liveCountByCity);
+        System.out.println("Live users in London: " + liveUsersByCity.get("London")
+            + ", youngest age: " + liveAges.min().getAsDouble());
+
         System.out.println("\n=== 3. Joining Examples ===");
         
         // Simple Joining
@@ -92,5 +110,11 @@ public class CollectorOperators {
             .map(User::getName)
             .collect(Collectors.joining(", ", "[", "]"));
         System.out.println("Joined Names with brackets: " + namesWithBrackets);
+
+        // Joining for large exports: parts are linked, not copied, and the text is written out once
+        MoreCollectors.Joined joinedNames = userList.parallelStream()
+            .map(User::getName)
+            .collect(MoreCollectors.joining(", ", "[", "]"));
+        System.out.println("Joined Names (" + joinedNames.length() + " chars, presized): " + joinedNames);
     }
 }
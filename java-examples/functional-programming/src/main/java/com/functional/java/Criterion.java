@@ -1,17 +1,114 @@
 package com.functional.java;
 
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
 public interface Criterion<E>
 {
     boolean test(E e);
 default Criterion<E> andCriterion(Criterion<E> crit1) {
-        return c -> this.test(c) && crit1.test(c);
+        return new CriterionTree.And<>(this, crit1);
     }
 default Criterion<E> orCriterion(Criterion<E> crit1) {
-        return c -> this.test(c) || crit1.test(c);
+        return new CriterionTree.Or<>(this, crit1);
     }
 
 default Criterion<E> negate()  {
-     return e -> !this.test(e);
+     return new CriterionTree.Not<>(this);
+    }
+
+    /**
+     * Optimizes this criterion for repeated evaluation.
+     * The and/or/negate tree is flattened, negations are pushed down to the leaves,
+     * and the children of every and/or are reordered so that cheap tests which decide
+     * the result most often run first. Selectivity and cost are measured on the sample.
+     *
+     * @param sample Representative elements, e.g. the first few thousand of a feed
+     * @return An equivalent criterion that evaluates as one flat branching program
+     */
+default Criterion<E> compile(Iterable<E> sample) {
+        return CriterionCompiler.compile(this, sample);
+    }
+
+    /**
+     * Optimizes this criterion while it runs, for filters whose best order is not known up
+     * front or changes with the data. See adaptive(int, long); this one samples about one
+     * test in 64 and re-plans every 1024 samples.
+     */
+default AdaptiveCriterion<E> adaptive() {
+        return adaptive(64, 1024);
+    }
+
+    /**
+     * Optimizes this criterion while it runs. Like compile, the tree is normalized and the
+     * and/or children are ordered by pass rate and cost, but these are sampled from the
+     * elements actually tested, and the order is revised every replanEvery samples. The
+     * returned criterion is safe to test from many threads at once and publishes what it
+     * measured through statistics().
+     *
+     * @param sampleEvery On average one test in this many also runs and times every leaf
+     * @param replanEvery The number of samples between two re-plans
+     * @return An equivalent criterion that reorders itself
+     */
+default AdaptiveCriterion<E> adaptive(int sampleEvery, long replanEvery) {
+        return new AdaptiveCriterion<>(this, sampleEvery, replanEvery);
+    }
+
+    /**
+     * Tests an attribute of the element and remembers the answer per attribute value, for
+     * expensive tests that only depend on one attribute, e.g.
+     * memoized(Car::getBrand, brand -> registry.isRecalled(brand), 1000).
+     * The answers are kept in a Memo with W-TinyLFU eviction; see Memo.
+     *
+     * @param key Extracts the attribute the test depends on
+     * @param test The test to run once per attribute value
+     * @param maxSize The most answers kept
+     */
+    static <E, K> Criterion<E> memoized(Function<E, K> key, Criterion<K> test, int maxSize) {
+        Memo<K, Boolean> answers = Memo.of(test::test, maxSize, Memo.Policy.TINY_LFU);
+        return e -> answers.apply(key.apply(e));
+    }
+
+    /**
+     * Gives a criterion a name, so compiled and printed trees are readable.
+     */
+    static <E> Criterion<E> named(String name, Criterion<E> crit) {
+        return new CriterionTree.Leaf<>(name, crit);
+    }
+
+    /**
+     * Passes when the key of an element is one of the given values, e.g.
+     * in(Car::getColor, List.of("RED", "GREEN")).
+     * The values are copied once into an immutable hash set (a small array for a
+     * handful of values), so each test is a single lookup that allocates nothing.
+     *
+     * @param key Extracts the attribute to look up
+     * @param values The accepted attribute values
+     */
+    static <E, K> Criterion<E> in(Function<E, K> key, Collection<? extends K> values) {
+        return new CriterionTree.In<>(key, values);
+    }
+
+    /**
+     * Passes when a numeric attribute is strictly greater than a bound, e.g. greaterThan(Car::getGasLevel, 10.0).
+     */
+    static <E> Criterion<E> greaterThan(ToDoubleFunction<E> key, double bound) {
+        return new CriterionTree.Range<>(key, bound, false, Double.POSITIVE_INFINITY, true);
+    }
+
+    /**
+     * Passes when a numeric attribute is strictly less than a bound.
+     */
+    static <E> Criterion<E> lessThan(ToDoubleFunction<E> key, double bound) {
+        return new CriterionTree.Range<>(key, Double.NEGATIVE_INFINITY, true, bound, false);
+    }
+
+    /**
+     * Passes when a numeric attribute lies between min and max, both included.
+     */
+    static <E> Criterion<E> between(ToDoubleFunction<E> key, double min, double max) {
+        return new CriterionTree.Range<>(key, min, true, max, true);
     }
 
 
@@ -0,0 +1,235 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Turns a Criterion tree into an optimized, flat evaluator. See Criterion.compile.
+ *
+ * Compilation runs in three steps:
+ * 1. Normalize: push every Not down to a leaf with De Morgan's laws
+ *    (NOT (a AND b) becomes NOT a OR NOT b) and merge nested and/or nodes of the
+ *    same kind into one node with many children.
+ * 2. Plan: measure how often each leaf passes and how long it takes on the sample,
+ *    then order the children of every and/or by expected cost per decision.
+ *    An AND is decided by its first failing child, so children that fail often and
+ *    cheaply go first; an OR is decided by its first passing child.
+ * 3. Emit: lay the ordered tree out as a branching program, an array of leaf tests
+ *    that each say where to jump on true and on false. A negated leaf just swaps
+ *    its two jumps, so evaluation is one loop with no nesting and no Not calls.
+ */
+final class CriterionCompiler
+{
+    private static final int ACCEPT = -1;
+    private static final int REJECT = -2;
+
+    private CriterionCompiler()
+    {
+    }
+
+    static <E> Criterion<E> compile(Criterion<E> crit, Iterable<E> sample) {
+        List<E> samples = new ArrayList<>();
+        for (E e : sample) {
+            samples.add(e);
+        }
+        Estimate<E> plan = plan(normalize(crit, false), leaf -> measure(leaf, samples));
+        return new Program<>(plan.node);
+    }
+
+    /**
+     * Orders a normalized tree by pass rates and costs known from elsewhere, e.g. measured
+     * while the criterion runs, as AdaptiveCriterion does. Leaves are the nodes of the tree
+     * that are neither And nor Or, and are kept as they are, so they can be looked up by identity.
+     *
+     * @param normalized A tree returned by normalize
+     * @param pass The fraction of elements a leaf passes
+     * @param cost The time a leaf takes per element, in any unit
+     * @return The reordered tree laid out as a branching program
+     */
+    static <E> Program<E> plan(Criterion<E> normalized, ToDoubleFunction<Criterion<E>> pass, ToDoubleFunction<Criterion<E>> cost) {
+        Estimate<E> plan = plan(normalized,
+            leaf -> new Estimate<>(leaf, pass.applyAsDouble(leaf), Math.max(Double.MIN_NORMAL, cost.applyAsDouble(leaf))));
+        return new Program<>(plan.node);
+    }
+
+    /**
+     * Rewrites a tree so that Not only appears directly above a leaf and no and/or
+     * node has a child of its own kind.
+     */
+    static <E> Criterion<E> normalize(Criterion<E> crit, boolean negated) {
+        if (crit instanceof CriterionTree.Not) {
+            return normalize(((CriterionTree.Not<E>) crit).child(), !negated);
+        }
+        if (crit instanceof CriterionTree.And || crit instanceof CriterionTree.Or) {
+            boolean and = crit instanceof CriterionTree.And;
+            List<Criterion<E>> children = and
+                ? ((CriterionTree.And<E>) crit).children()
+                : ((CriterionTree.Or<E>) crit).children();
+            // De Morgan: a negated AND is an OR of negated children, and vice versa
+            boolean resultIsAnd = and != negated;
+            List<Criterion<E>> flat = new ArrayList<>();
+            for (Criterion<E> child : children) {
+                Criterion<E> normal = normalize(child, negated);
+                if (resultIsAnd && normal instanceof CriterionTree.And) {
+                    flat.addAll(((CriterionTree.And<E>) normal).children());
+                } else if (!resultIsAnd && normal instanceof CriterionTree.Or) {
+                    flat.addAll(((CriterionTree.Or<E>) normal).children());
+                } else {
+                    flat.add(normal);
+                }
+            }
+            return resultIsAnd ? new CriterionTree.And<>(flat) : new CriterionTree.Or<>(flat);
+        }
+        return negated ? new CriterionTree.Not<>(crit) : crit;
+    }
+
+    /**
+     * Estimates pass rate and cost of a normalized tree, reordering and/or children on the way.
+     * Children are treated as independent, the usual assumption of query planners.
+     */
+    private static <E> Estimate<E> plan(Criterion<E> crit, Function<Criterion<E>, Estimate<E>> leafEstimate) {
+        boolean and = crit instanceof CriterionTree.And;
+        if (!and && !(crit instanceof CriterionTree.Or)) {
+            return leafEstimate.apply(crit);
+        }
+
+        List<Criterion<E>> children = and
+            ? ((CriterionTree.And<E>) crit).children()
+            : ((CriterionTree.Or<E>) crit).children();
+        List<Estimate<E>> estimates = new ArrayList<>();
+        for (Criterion<E> child : children) {
+            estimates.add(plan(child, leafEstimate));
+        }
+        // cost paid per element that this child decides; the list sort is stable,
+        // so children that tie keep the order they were written in
+        estimates.sort(Comparator.comparingDouble(est -> est.cost / (and ? 1 - est.pass : est.pass)));
+
+        double reach = 1.0;
+        double cost = 0.0;
+        List<Criterion<E>> ordered = new ArrayList<>();
+        for (Estimate<E> est : estimates) {
+            cost += reach * est.cost;
+            reach *= and ? est.pass : 1 - est.pass;
+            ordered.add(est.node);
+        }
+        double pass = and ? reach : 1 - reach;
+        Criterion<E> node = and ? new CriterionTree.And<>(ordered) : new CriterionTree.Or<>(ordered);
+        return new Estimate<>(node, pass, cost);
+    }
+
+    private static <E> Estimate<E> measure(Criterion<E> leaf, List<E> samples) {
+        if (samples.isEmpty()) {
+            return new Estimate<>(leaf, 0.5, 1.0);
+        }
+        int passed = 0;
+        long start = System.nanoTime();
+        for (E e : samples) {
+            if (leaf.test(e)) {
+                passed++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Estimate<>(leaf, (double) passed / samples.size(), Math.max(1.0, (double) elapsed / samples.size()));
+    }
+
+    private static final class Estimate<E>
+    {
+        final Criterion<E> node;
+        final double pass;
+        final double cost;
+
+        Estimate(Criterion<E> node, double pass, double cost)
+        {
+            this.node = node;
+            this.pass = pass;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * A normalized tree laid out as a branching program: instruction i tests
+     * tests[i] and continues at onTrue[i] or onFalse[i], until it reaches ACCEPT or REJECT.
+     */
+    static final class Program<E> implements Criterion<E>
+    {
+        private final Criterion<E> tree;
+        // scratch space for emit, emptied once the arrays below are filled
+        private final List<Criterion<E>> tests = new ArrayList<>();
+        private final List<int[]> jumps = new ArrayList<>();
+        private final Criterion<E>[] testArray;
+        private final int[] onTrue;
+        private final int[] onFalse;
+        private final int entry;
+
+        @SuppressWarnings("unchecked")
+        Program(Criterion<E> tree)
+        {
+            this.tree = tree;
+            this.entry = emit(tree, ACCEPT, REJECT);
+            this.testArray = (Criterion<E>[]) tests.toArray(new Criterion<?>[0]);
+            this.onTrue = new int[jumps.size()];
+            this.onFalse = new int[jumps.size()];
+            for (int i = 0; i < jumps.size(); i++) {
+                onTrue[i] = jumps.get(i)[0];
+                onFalse[i] = jumps.get(i)[1];
+            }
+            tests.clear();
+            jumps.clear();
+        }
+
+        /**
+         * Emits the instructions of a node, given where to go once it is known to be true or false.
+         * Children are emitted last-to-first so each one can jump straight into the next.
+         *
+         * @return The instruction where evaluation of the node starts
+         */
+        private int emit(Criterion<E> node, int whenTrue, int whenFalse) {
+            if (node instanceof CriterionTree.And) {
+                List<Criterion<E>> children = ((CriterionTree.And<E>) node).children();
+                int next = whenTrue;
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    next = emit(children.get(i), next, whenFalse);
+                }
+                return next;
+            }
+            if (node instanceof CriterionTree.Or) {
+                List<Criterion<E>> children = ((CriterionTree.Or<E>) node).children();
+                int next = whenFalse;
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    next = emit(children.get(i), whenTrue, next);
+                }
+                return next;
+            }
+            if (node instanceof CriterionTree.Not) {
+                return emit(((CriterionTree.Not<E>) node).child(), whenFalse, whenTrue);
+            }
+            tests.add(node);
+            jumps.add(new int[]{whenTrue, whenFalse});
+            return tests.size() - 1;
+        }
+
+        /**
+         * @return The normalized and reordered tree this program was built from
+         */
+        Criterion<E> tree() {
+            return tree;
+        }
+
+        @Override
+        public boolean test(E e) {
+            int pc = entry;
+            while (pc >= 0) {
+                pc = testArray[pc].test(e) ? onTrue[pc] : onFalse[pc];
+            }
+            return pc == ACCEPT;
+        }
+
+        @Override
+        public String toString() {
+            return "compiled " + tree;
+        }
+    }
+}
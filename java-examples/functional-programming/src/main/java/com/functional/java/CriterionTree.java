@@ -0,0 +1,251 @@
+package com.functional.java;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The node types that andCriterion, orCriterion and negate build.
+ * Unlike nested lambdas, these nodes can be inspected and rewritten, which is
+ * what Criterion.compile does. Any Criterion that is not one of these nodes
+ * (a lambda, a method reference, ...) is a leaf.
+ */
+public final class CriterionTree
+{
+    private CriterionTree()
+    {
+    }
+
+    /**
+     * Passes when every child passes; stops at the first child that fails.
+     */
+    public static final class And<E> implements Criterion<E>
+    {
+        private final Criterion<E>[] children;
+
+        And(Criterion<E> first, Criterion<E> second)
+        {
+            this(Arrays.asList(first, second));
+        }
+
+        And(List<Criterion<E>> children)
+        {
+            this.children = toArray(children);
+        }
+
+        public List<Criterion<E>> children() {
+            return List.of(children);
+        }
+
+        @Override
+        public boolean test(E e) {
+            for (Criterion<E> child : children) {
+                if (!child.test(e)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " AND ");
+        }
+    }
+
+    /**
+     * Passes when any child passes; stops at the first child that passes.
+     */
+    public static final class Or<E> implements Criterion<E>
+    {
+        private final Criterion<E>[] children;
+
+        Or(Criterion<E> first, Criterion<E> second)
+        {
+            this(Arrays.asList(first, second));
+        }
+
+        Or(List<Criterion<E>> children)
+        {
+            this.children = toArray(children);
+        }
+
+        public List<Criterion<E>> children() {
+            return List.of(children);
+        }
+
+        @Override
+        public boolean test(E e) {
+            for (Criterion<E> child : children) {
+                if (child.test(e)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " OR ");
+        }
+    }
+
+    /**
+     * Passes when its child fails.
+     */
+    public static final class Not<E> implements Criterion<E>
+    {
+        private final Criterion<E> child;
+
+        Not(Criterion<E> child)
+        {
+            this.child = child;
+        }
+
+        public Criterion<E> child() {
+            return child;
+        }
+
+        @Override
+        public boolean test(E e) {
+            return !child.test(e);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + child;
+        }
+    }
+
+    /**
+     * A named test, see Criterion.named.
+     */
+    public static final class Leaf<E> implements Criterion<E>
+    {
+        private final String name;
+        private final Criterion<E> test;
+
+        Leaf(String name, Criterion<E> test)
+        {
+            this.name = name;
+            this.test = test;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Criterion<E> criterion() {
+            return test;
+        }
+
+        @Override
+        public boolean test(E e) {
+            return test.test(e);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Tests whether an attribute of the element is in a fixed set of values, see Criterion.in.
+     */
+    public static final class In<E, K> implements Criterion<E>
+    {
+        private final Function<E, K> key;
+        private final MembershipSet<K> values;
+
+        In(Function<E, K> key, Collection<? extends K> values)
+        {
+            this.key = key;
+            this.values = new MembershipSet<>(values);
+        }
+
+        public Function<E, K> key() {
+            return key;
+        }
+
+        public List<K> values() {
+            return values.values();
+        }
+
+        @Override
+        public boolean test(E e) {
+            return values.contains(key.apply(e));
+        }
+
+        @Override
+        public String toString() {
+            return "in " + values.values();
+        }
+    }
+
+    /**
+     * Tests whether a numeric attribute of the element lies in an interval, see Criterion.between.
+     * NaN is never in range.
+     */
+    public static final class Range<E> implements Criterion<E>
+    {
+        private final ToDoubleFunction<E> key;
+        private final double min;
+        private final boolean minInclusive;
+        private final double max;
+        private final boolean maxInclusive;
+
+        Range(ToDoubleFunction<E> key, double min, boolean minInclusive, double max, boolean maxInclusive)
+        {
+            this.key = key;
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+        }
+
+        public ToDoubleFunction<E> key() {
+            return key;
+        }
+
+        public double min() {
+            return min;
+        }
+
+        public boolean minInclusive() {
+            return minInclusive;
+        }
+
+        public double max() {
+            return max;
+        }
+
+        public boolean maxInclusive() {
+            return maxInclusive;
+        }
+
+        @Override
+        public boolean test(E e) {
+            double value = key.applyAsDouble(e);
+            return (minInclusive ? value >= min : value > min)
+                && (maxInclusive ? value <= max : value < max);
+        }
+
+        @Override
+        public String toString() {
+            return "in " + (minInclusive ? "[" : "(") + min + ", " + max + (maxInclusive ? "]" : ")");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Criterion<E>[] toArray(List<Criterion<E>> children) {
+        return (Criterion<E>[]) children.toArray(new Criterion<?>[0]);
+    }
+
+    private static String join(Criterion<?>[] children, String operator) {
+        return Arrays.stream(children).map(String::valueOf).collect(Collectors.joining(operator, "(", ")"));
+    }
+}
@@ -0,0 +1,178 @@
+package com.functional.java;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.OptionalDouble;
+import java.util.RandomAccess;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A SuperIterable of primitive doubles, backed by a growable double[] buffer.
+ * This is the counterpart of IntSuperIterable for values such as Car gas levels:
+ * filter, map and the aggregations never box a value.
+ * Unlike SuperIterable, the operations here are eager: each one fills a new buffer.
+ */
+public class DoubleSuperIterable
+{
+    private static final double[] EMPTY = {};
+
+    private double[] values;
+    private int size;
+
+    DoubleSuperIterable()
+    {
+        this(EMPTY, 0);
+    }
+
+    DoubleSuperIterable(double[] values, int size)
+    {
+        this.values = values;
+        this.size = size;
+    }
+
+    public static DoubleSuperIterable of(double... values)
+    {
+        return new DoubleSuperIterable(values.clone(), values.length);
+    }
+
+    /**
+     * Appends one value, growing the buffer by half when it is full.
+     * Only used while the buffer is being built, e.g. by SuperIterable.mapToDouble.
+     */
+    void add(double value)
+    {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size + (size >> 1)));
+        }
+        values[size++] = value;
+    }
+
+    void addAll(DoubleSuperIterable other)
+    {
+        if (size + other.size > values.length) {
+            values = Arrays.copyOf(values, size + other.size);
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public DoubleSuperIterable filter(DoublePredicate pred) {
+        double[] kept = new double[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (pred.test(values[i])) {
+                kept[count++] = values[i];
+            }
+        }
+        return new DoubleSuperIterable(kept, count);
+    }
+
+    public DoubleSuperIterable map(DoubleUnaryOperator mapper) {
+        double[] results = new double[size];
+        for (int i = 0; i < size; i++) {
+            results[i] = mapper.applyAsDouble(values[i]);
+        }
+        return new DoubleSuperIterable(results, size);
+    }
+
+    /**
+     * Goes back to objects. The returned SuperIterable is a lazy view over this buffer,
+     * so the mapper (and any boxing it does) only runs when that pipeline is pulled.
+     *
+     * @param mapper A function that turns each double into an object
+     * @param <U> The type of elements in the returned SuperIterable
+     * @return A SuperIterable over the mapped values
+     */
+    public <U> SuperIterable<U> mapToObj(DoubleFunction<U> mapper) {
+        double[] snapshot = values;
+        int length = size;
+        return new SuperIterable<>(new View<U>() {
+            @Override
+            public U get(int index) {
+                return mapper.apply(snapshot[index]);
+            }
+
+            @Override
+            public int size() {
+                return length;
+            }
+        });
+    }
+
+    public void forEvery(DoubleConsumer cons) {
+        for (int i = 0; i < size; i++) {
+            cons.accept(values[i]);
+        }
+    }
+
+    /**
+     * Adds up all values with Kahan summation, so long runs of small gas levels
+     * do not lose precision against a large running total. An infinite value turns
+     * the compensation into NaN, so a plain sum is kept alongside, as DoubleStream.sum
+     * does, and returned when the compensated one is NaN for that reason.
+     *
+     * @return The sum of all values, 0.0 when empty
+     */
+    public double sum() {
+        double sum = 0.0;
+        double compensation = 0.0;
+        double simpleSum = 0.0;
+        for (int i = 0; i < size; i++) {
+            double y = values[i] - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+            simpleSum += values[i];
+        }
+        if (Double.isNaN(sum) && Double.isInfinite(simpleSum)) {
+            return simpleSum;
+        }
+        return sum;
+    }
+
+    public OptionalDouble min() {
+        if (size == 0) {
+            return OptionalDouble.empty();
+        }
+        double min = values[0];
+        for (int i = 1; i < size; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return OptionalDouble.of(min);
+    }
+
+    public OptionalDouble max() {
+        if (size == 0) {
+            return OptionalDouble.empty();
+        }
+        double max = values[0];
+        for (int i = 1; i < size; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return OptionalDouble.of(max);
+    }
+
+    public OptionalDouble average() {
+        return size == 0 ? OptionalDouble.empty() : OptionalDouble.of(sum() / size);
+    }
+
+    public double[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private abstract static class View<U> extends AbstractList<U> implements RandomAccess
+    {
+    }
+}
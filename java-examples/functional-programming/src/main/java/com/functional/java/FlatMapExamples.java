@@ -77,6 +77,22 @@ public class FlatMapExamples {
             .collect(Collectors.toList());
 
         System.out.println("All nicknames (including defaults): " + nicknames);
+
+        System.out.println("\n=== 5. Mixing SuperIterable and Java Streams ===");
+        // Scenario: flatten the orders with SuperIterable, continue with a parallel stream,
+        // then come back to SuperIterable. The map stage keeps the exact size of the list,
+        // so the parallel stream splits it evenly and toArray allocates its array once.
+        SuperIterable<List<String>> superOrders = new SuperIterable<>(orders);
+        String[] orderSizes = superOrders
+            .map(order -> order.size() + " items")
+            .parallelStream()
+            .toArray(String[]::new);
+        System.out.println("Order sizes, in order: " + Arrays.toString(orderSizes));
+
+        SuperIterable.from(orders.stream().flatMap(List::stream))
+            .filter(item -> item.startsWith("M"))
+            .map(String::toUpperCase)
+            .forEvery(item -> System.out.println("Item from a stream, filtered by SuperIterable: " + item));
     }
 
     // Helper classes for the Optional example
@@ -0,0 +1,132 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The most frequent elements of a stream (top brands, busiest cities, ...) in bounded
+ * memory, using the SpaceSaving algorithm of Metwally, Agrawal and El Abbadi.
+ *
+ * At most capacity elements are counted. When a new element arrives and all counters are
+ * taken, it replaces the element with the smallest count and inherits that count plus one,
+ * so counts are overestimates by at most the smallest count. Any element that makes up
+ * more than 1 / capacity of the stream is guaranteed to be among the counters.
+ *
+ * Merging follows Agarwal et al.'s mergeable summaries, so it works with the 3-argument
+ * collect and parallel streams:
+ *
+ *   HeavyHitters<String> brands = cars.parallelStream()
+ *       .map(Car::getBrand)
+ *       .collect(() -> new HeavyHitters<>(50), HeavyHitters::accept, HeavyHitters::merge);
+ *   brands.top(5);
+ *
+ * Replacing the smallest counter scans all counters, so keep the capacity in the hundreds.
+ *
+ * @param <T> The type of elements counted
+ */
+public class HeavyHitters<T> implements Consumer<T>
+{
+    private final int capacity;
+    private final Map<T, long[]> counts = new HashMap<>();
+    private long total;
+
+    /**
+     * @param capacity The number of elements tracked; top(n) is reliable for n well below it
+     */
+    public HeavyHitters(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void accept(T element)
+    {
+        total++;
+        long[] count = counts.get(element);
+        if (count != null) {
+            count[0]++;
+        } else if (counts.size() < capacity) {
+            counts.put(element, new long[]{1});
+        } else {
+            T smallest = smallest();
+            long[] replaced = counts.remove(smallest);
+            replaced[0]++;
+            counts.put(element, replaced);
+        }
+    }
+
+    private T smallest() {
+        T smallest = null;
+        long least = Long.MAX_VALUE;
+        for (Map.Entry<T, long[]> entry : counts.entrySet()) {
+            if (entry.getValue()[0] < least) {
+                least = entry.getValue()[0];
+                smallest = entry.getKey();
+            }
+        }
+        return smallest;
+    }
+
+    private long smallestCount() {
+        return counts.size() < capacity ? 0 : counts.get(smallest())[0];
+    }
+
+    /**
+     * Adds the elements seen by another summary. An element missing from one side may still
+     * have occurred there up to that side's smallest count, so that count is added for it.
+     */
+    public void merge(HeavyHitters<T> other) {
+        long ownFloor = smallestCount();
+        long otherFloor = other.smallestCount();
+        Map<T, long[]> merged = new HashMap<>();
+        counts.forEach((element, count) -> {
+            long[] otherCount = other.counts.get(element);
+            merged.put(element, new long[]{count[0] + (otherCount == null ? otherFloor : otherCount[0])});
+        });
+        other.counts.forEach((element, count) -> {
+            if (!merged.containsKey(element)) {
+                merged.put(element, new long[]{count[0] + ownFloor});
+            }
+        });
+        total += other.total;
+        counts.clear();
+        if (merged.size() <= capacity) {
+            counts.putAll(merged);
+            return;
+        }
+        List<Map.Entry<T, long[]>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        for (Map.Entry<T, long[]> entry : entries.subList(0, capacity)) {
+            counts.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return The number of elements accepted, including those no longer tracked
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the n most frequent elements with their estimated counts, most frequent first.
+     * An estimate exceeds the true count by at most the smallest count tracked.
+     */
+    public Map<T, Long> top(int n) {
+        SortedArrayMap.Builder<T, Long> top = new SortedArrayMap.Builder<>(
+            Map.Entry.<T, Long>comparingByValue().reversed(), n);
+        counts.forEach((element, count) -> top.add(element, count[0]));
+        return top.build();
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHitters" + top(Math.min(10, capacity));
+    }
+}
@@ -0,0 +1,497 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A collection with secondary indexes, so Criterion queries do not have to scan every element.
+ *
+ * Two kinds of index are supported:
+ * - a hash index on an equality attribute (color, brand, ...), used by Criterion.in
+ * - a sorted index on a numeric attribute (gas level, ...), used by Criterion.greaterThan,
+ *   lessThan and between
+ *
+ * A criterion matches an index when it was built with the very same key function
+ * instance the index was created with, so keep those functions in constants:
+ *
+ *   Function<Car, String> color = Car::getColor;
+ *   ToDoubleFunction<Car> gas = Car::getGasLevel;
+ *   cars.addHashIndex("color", color).addSortedIndex("gas", gas);
+ *   cars.query(Criterion.in(color, List.of("RED")).andCriterion(Criterion.greaterThan(gas, 10.0)));
+ *
+ * Every element gets a row number, and every index maps its keys to the BitSet of
+ * rows that have that key. A query is planned against the normalized criterion tree:
+ * AND intersects the row sets of its indexed children, OR unites them, NOT takes the
+ * complement. Children no index can answer are then tested on the remaining rows only.
+ * Elements are held by identity. Indexes read the keys when an element is added; call
+ * update(e) after changing an indexed attribute of an element already in the collection.
+ *
+ * Aggregate views (counts, sums, min/max, groupings, see AggregateView) registered with
+ * addView are kept up to date the same way as the indexes: every add, remove and update
+ * applies a delta to them instead of recomputing them from all elements.
+ *
+ * The collection is guarded by a read-write lock: add, remove, update and the methods that
+ * register indexes and views take the write lock, while query, explain, size, contains and
+ * every read of a view take the read lock. A dashboard can therefore poll views from its
+ * own threads while another thread applies changes, and always sees the state between two
+ * changes. The iterator is the exception: it reads without the lock, so iterate on the
+ * thread that makes changes, or iterate over a copy such as query(x -> true).
+ *
+ * @param <E> The type of elements in the collection
+ */
+public class IndexedCollection<E> implements Iterable<E>
+{
+    private final List<E> rows = new ArrayList<>();
+    private final Map<E, Integer> rowOf = new IdentityHashMap<>();
+    private final BitSet live = new BitSet();
+    private final BitSet free = new BitSet();
+    private final List<HashIndex<E, ?>> hashIndexes = new ArrayList<>();
+    private final List<SortedIndex<E>> sortedIndexes = new ArrayList<>();
+    private final List<AggregateView<E>> views = new ArrayList<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public <K> IndexedCollection<E> addHashIndex(String name, Function<E, K> key) {
+        lock.writeLock().lock();
+        try {
+            HashIndex<E, K> index = new HashIndex<>(name, key);
+            forEachRow(index::add);
+            hashIndexes.add(index);
+            return this;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public IndexedCollection<E> addSortedIndex(String name, ToDoubleFunction<E> key) {
+        lock.writeLock().lock();
+        try {
+            SortedIndex<E> index = new SortedIndex<>(name, key);
+            forEachRow(index::add);
+            sortedIndexes.add(index);
+            return this;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers an aggregate view, computes it over the current elements and from then on
+     * maintains it on every change.
+     *
+     * @param view A new view, e.g. AggregateView.countBy(User::getCity)
+     * @return The same view, for reading the aggregate
+     */
+    public <V extends AggregateView<E>> V addView(V view) {
+        lock.writeLock().lock();
+        try {
+            view.attach(this);
+            forEachRow(view::add);
+            views.add(view);
+            return view;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an element and indexes it.
+     *
+     * @return false if this exact element is already in the collection
+     */
+    public boolean add(E e) {
+        lock.writeLock().lock();
+        try {
+            if (rowOf.containsKey(e)) {
+                return false;
+            }
+            int row = free.isEmpty() ? rows.size() : free.nextSetBit(0);
+            if (row == rows.size()) {
+                rows.add(e);
+            } else {
+                free.clear(row);
+                rows.set(row, e);
+            }
+            rowOf.put(e, row);
+            live.set(row);
+            indexRow(row, e);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an element from the collection and from every index.
+     *
+     * @return false if this exact element was not in the collection
+     */
+    public boolean remove(E e) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowOf.remove(e);
+            if (row == null) {
+                return false;
+            }
+            unindexRow(row);
+            rows.set(row, null);
+            live.clear(row);
+            free.set(row);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-reads the indexed attributes of an element that was changed in place.
+     *
+     * @return false if this exact element is not in the collection
+     */
+    public boolean update(E e) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowOf.get(e);
+            if (row == null) {
+                return false;
+            }
+            unindexRow(row);
+            indexRow(row, e);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(E e) {
+        lock.readLock().lock();
+        try {
+            return rowOf.containsKey(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowOf.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all elements matching a criterion, using indexes where the criterion allows it.
+     *
+     * @param crit The criterion to match
+     * @return The matching elements, in row order
+     */
+    public List<E> query(Criterion<E> crit) {
+        lock.readLock().lock();
+        try {
+            Plan plan = plan(CriterionCompiler.normalize(crit, false));
+            BitSet candidates = plan == null ? live : plan.rows;
+            List<E> results = new ArrayList<>();
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                E e = rows.get(row);
+                if ((plan != null && plan.exact) || crit.test(e)) {
+                    results.add(e);
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Describes how query would evaluate a criterion, e.g. for checking that an index is used.
+     *
+     * @param crit The criterion to plan
+     * @return A one-line description of the plan
+     */
+    public String explain(Criterion<E> crit) {
+        lock.readLock().lock();
+        try {
+            Plan plan = plan(CriterionCompiler.normalize(crit, false));
+            if (plan == null) {
+                return "full scan of " + size() + " rows";
+            }
+            return plan.description + " -> " + plan.rows.cardinality() + " rows"
+                + (plan.exact ? "" : ", then filter");
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        return new Iterator<E>() {
+            private int next = live.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public E next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                E e = rows.get(next);
+                next = live.nextSetBit(next + 1);
+                return e;
+            }
+        };
+    }
+
+    /**
+     * The element in a row; callers hold the read lock.
+     */
+    E element(int row) {
+        return rows.get(row);
+    }
+
+    /**
+     * The lock views take to read their aggregate while no change is half applied.
+     */
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    private void forEachRow(RowConsumer<E> action) {
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            action.accept(row, rows.get(row));
+        }
+    }
+
+    private void indexRow(int row, E e) {
+        for (HashIndex<E, ?> index : hashIndexes) {
+            index.add(row, e);
+        }
+        for (SortedIndex<E> index : sortedIndexes) {
+            index.add(row, e);
+        }
+        for (AggregateView<E> view : views) {
+            view.add(row, e);
+        }
+    }
+
+    private void unindexRow(int row) {
+        for (HashIndex<E, ?> index : hashIndexes) {
+            index.remove(row);
+        }
+        for (SortedIndex<E> index : sortedIndexes) {
+            index.remove(row);
+        }
+        for (AggregateView<E> view : views) {
+            view.remove(row);
+        }
+    }
+
+    /**
+     * Works out which rows can match a normalized criterion using only the indexes.
+     *
+     * @return null when no index helps and every row has to be tested
+     */
+    private Plan plan(Criterion<E> crit) {
+        if (crit instanceof CriterionTree.Leaf) {
+            return plan(((CriterionTree.Leaf<E>) crit).criterion());
+        }
+        if (crit instanceof CriterionTree.In) {
+            CriterionTree.In<E, ?> in = (CriterionTree.In<E, ?>) crit;
+            for (HashIndex<E, ?> index : hashIndexes) {
+                if (index.key == in.key()) {
+                    return new Plan(index.lookup(in.values()), true, index.name + " " + in);
+                }
+            }
+            return null;
+        }
+        if (crit instanceof CriterionTree.Range) {
+            CriterionTree.Range<E> range = (CriterionTree.Range<E>) crit;
+            for (SortedIndex<E> index : sortedIndexes) {
+                if (index.key == range.key()) {
+                    return new Plan(index.lookup(range), true, index.name + " " + range);
+                }
+            }
+            return null;
+        }
+        if (crit instanceof CriterionTree.Not) {
+            Plan child = plan(((CriterionTree.Not<E>) crit).child());
+            if (child == null || !child.exact) {
+                return null;
+            }
+            BitSet rowsLeft = (BitSet) live.clone();
+            rowsLeft.andNot(child.rows);
+            return new Plan(rowsLeft, true, "NOT " + child.description);
+        }
+        if (crit instanceof CriterionTree.And) {
+            Plan result = null;
+            boolean exact = true;
+            for (Criterion<E> child : ((CriterionTree.And<E>) crit).children()) {
+                Plan plan = plan(child);
+                if (plan == null) {
+                    exact = false;
+                } else if (result == null) {
+                    result = new Plan((BitSet) plan.rows.clone(), plan.exact, plan.description);
+                } else {
+                    result.rows.and(plan.rows);
+                    result.exact &= plan.exact;
+                    result.description = "(" + result.description + " AND " + plan.description + ")";
+                }
+            }
+            if (result != null) {
+                result.exact &= exact;
+            }
+            return result;
+        }
+        if (crit instanceof CriterionTree.Or) {
+            Plan result = null;
+            for (Criterion<E> child : ((CriterionTree.Or<E>) crit).children()) {
+                Plan plan = plan(child);
+                if (plan == null) {
+                    // one child needs a scan, so the whole OR does
+                    return null;
+                } else if (result == null) {
+                    result = new Plan((BitSet) plan.rows.clone(), plan.exact, plan.description);
+                } else {
+                    result.rows.or(plan.rows);
+                    result.exact &= plan.exact;
+                    result.description = "(" + result.description + " OR " + plan.description + ")";
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Candidate rows for a criterion; exact when every candidate is known to match.
+     */
+    private static final class Plan
+    {
+        final BitSet rows;
+        boolean exact;
+        String description;
+
+        Plan(BitSet rows, boolean exact, String description)
+        {
+            this.rows = rows;
+            this.exact = exact;
+            this.description = description;
+        }
+    }
+
+    private interface RowConsumer<E>
+    {
+        void accept(int row, E e);
+    }
+
+    /**
+     * Maps each key to the rows that have it. The key of every row is remembered,
+     * so a row can be unindexed after its element has changed.
+     */
+    private static final class HashIndex<E, K>
+    {
+        private final String name;
+        private final Function<E, K> key;
+        private final Map<K, BitSet> postings = new HashMap<>();
+        private final Map<Integer, K> keyOf = new HashMap<>();
+
+        HashIndex(String name, Function<E, K> key)
+        {
+            this.name = name;
+            this.key = key;
+        }
+
+        void add(int row, E e) {
+            K k = key.apply(e);
+            keyOf.put(row, k);
+            postings.computeIfAbsent(k, ignored -> new BitSet()).set(row);
+        }
+
+        void remove(int row) {
+            K k = keyOf.remove(row);
+            BitSet bits = postings.get(k);
+            bits.clear(row);
+            if (bits.isEmpty()) {
+                postings.remove(k);
+            }
+        }
+
+        BitSet lookup(List<?> values) {
+            BitSet result = new BitSet();
+            for (Object value : values) {
+                BitSet bits = postings.get(value);
+                if (bits != null) {
+                    result.or(bits);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Keeps rows ordered by a numeric key, so a range query only visits the keys inside the range.
+     * NaN keys are never in any range, so they are remembered but not put in the tree.
+     */
+    private static final class SortedIndex<E>
+    {
+        private final String name;
+        private final ToDoubleFunction<E> key;
+        private final NavigableMap<Double, BitSet> postings = new TreeMap<>();
+        private final Map<Integer, Double> keyOf = new HashMap<>();
+
+        SortedIndex(String name, ToDoubleFunction<E> key)
+        {
+            this.name = name;
+            this.key = key;
+        }
+
+        void add(int row, E e) {
+            // + 0.0 turns -0.0 into 0.0, which TreeMap would otherwise order before 0.0
+            double k = key.applyAsDouble(e) + 0.0;
+            keyOf.put(row, k);
+            if (!Double.isNaN(k)) {
+                postings.computeIfAbsent(k, ignored -> new BitSet()).set(row);
+            }
+        }
+
+        void remove(int row) {
+            Double k = keyOf.remove(row);
+            BitSet bits = postings.get(k);
+            if (bits != null) {
+                bits.clear(row);
+                if (bits.isEmpty()) {
+                    postings.remove(k);
+                }
+            }
+        }
+
+        BitSet lookup(CriterionTree.Range<E> range) {
+            BitSet result = new BitSet();
+            if (range.min() > range.max() || Double.isNaN(range.min()) || Double.isNaN(range.max())) {
+                return result;
+            }
+            for (BitSet bits : postings.subMap(range.min() + 0.0, range.minInclusive(),
+                                               range.max() + 0.0, range.maxInclusive()).values()) {
+                result.or(bits);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.functional.java;
+
+import java.lang.management.ManagementFactory;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The stage decorator behind SuperIterable.instrumented.
+ *
+ * A decorated stage gets a probe on both sides: one sink in front of it counting what
+ * comes in and timing the whole call, and one between it and the next stage counting
+ * what goes out and timing the downstream part, which is subtracted again. The counts
+ * live in plain fields of the probe, which belongs to one run or split and so to one
+ * thread, and are flushed into the shared StageMetrics every FLUSH_EVERY elements and
+ * at the end, together with a JFR event.
+ *
+ * Uninstrumented pipelines never see this class: the choice is made when a stage is
+ * added, so they pay nothing for it.
+ */
+final class InstrumentedStage
+{
+    private static final int FLUSH_EVERY = 1024;
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private InstrumentedStage()
+    {
+    }
+
+    static <I, O> Stage<I, O> of(Stage<I, O> stage, PipelineMetrics.StageMetrics metrics)
+    {
+        return downstream -> {
+            Probe probe = new Probe(metrics);
+            Sink<I> inner = stage.wrap(new Out<O>(downstream, probe));
+            return new In<>(inner, probe);
+        };
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                    return threads;
+                }
+            }
+        } catch (LinkageError | SecurityException e) {
+            // no java.management module, or not allowed to use it: allocation is reported as 0
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Counters of one stage within one run or split.
+     */
+    private static final class Probe
+    {
+        private final PipelineMetrics.StageMetrics metrics;
+        private long in;
+        private long out;
+        private long nanos;
+        private long bytes;
+        private StageEvent event;
+
+        Probe(PipelineMetrics.StageMetrics metrics)
+        {
+            this.metrics = metrics;
+            startEvent();
+        }
+
+        private void startEvent() {
+            event = new StageEvent();
+            event.begin();
+        }
+
+        void flush() {
+            metrics.add(in, out, nanos, bytes);
+            event.end();
+            if (event.shouldCommit()) {
+                event.pipeline = metrics.pipeline();
+                event.stage = metrics.position() + " " + metrics.name();
+                event.elementsIn = in;
+                event.elementsOut = out;
+                event.stageTime = nanos;
+                event.allocated = bytes;
+                event.commit();
+            }
+            in = 0;
+            out = 0;
+            nanos = 0;
+            bytes = 0;
+            startEvent();
+        }
+    }
+
+    private static final class In<I> implements Sink<I>
+    {
+        private final Sink<I> inner;
+        private final Probe probe;
+
+        In(Sink<I> inner, Probe probe)
+        {
+            this.inner = inner;
+            this.probe = probe;
+        }
+
+        @Override
+        public void accept(I e)
+        {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            inner.accept(e);
+            probe.nanos += System.nanoTime() - start;
+            probe.bytes += allocatedBytes() - bytes;
+            if (++probe.in % FLUSH_EVERY == 0) {
+                probe.flush();
+            }
+        }
+
+        @Override
+        public boolean cancellationRequested()
+        {
+            return inner.cancellationRequested();
+        }
+
+        @Override
+        public void end()
+        {
+            // stages such as batch do real work here, e.g. flushing a last partial batch
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            inner.end();
+            probe.nanos += System.nanoTime() - start;
+            probe.bytes += allocatedBytes() - bytes;
+            probe.flush();
+        }
+    }
+
+    private static final class Out<O> implements Sink<O>
+    {
+        private final Sink<? super O> downstream;
+        private final Probe probe;
+
+        Out(Sink<? super O> downstream, Probe probe)
+        {
+            this.downstream = downstream;
+            this.probe = probe;
+        }
+
+        @Override
+        public void accept(O e)
+        {
+            probe.out++;
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            downstream.accept(e);
+            probe.nanos -= System.nanoTime() - start;
+            probe.bytes -= allocatedBytes() - bytes;
+        }
+
+        @Override
+        public boolean cancellationRequested()
+        {
+            return downstream.cancellationRequested();
+        }
+
+        @Override
+        public void end()
+        {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            downstream.end();
+            probe.nanos -= System.nanoTime() - start;
+            probe.bytes -= allocatedBytes() - bytes;
+        }
+    }
+
+    /**
+     * One flush of a stage's counters, for watching pipelines in a JFR recording, e.g. with
+     * jfr print --events com.functional.java.PipelineStage recording.jfr
+     */
+    @Name("com.functional.java.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category({"Functional Java", "SuperIterable"})
+    @Description("Elements passed through one SuperIterable stage, and the stage's own time and allocation")
+    @StackTrace(false)
+    static final class StageEvent extends Event
+    {
+        @Label("Pipeline")
+        String pipeline;
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Elements In")
+        long elementsIn;
+
+        @Label("Elements Out")
+        long elementsOut;
+
+        @Label("Stage Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long stageTime;
+
+        @Label("Allocated")
+        @DataAmount(DataAmount.BYTES)
+        long allocated;
+    }
+}
@@ -0,0 +1,171 @@
+package com.functional.java;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.RandomAccess;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A SuperIterable of primitive ints, backed by a growable int[] buffer.
+ * filter and map work directly on the buffer and the aggregations read it in place,
+ * so no Integer is ever created between mapToInt and the final result.
+ * Unlike SuperIterable, the operations here are eager: each one fills a new buffer.
+ */
+public class IntSuperIterable
+{
+    private static final int[] EMPTY = {};
+
+    private int[] values;
+    private int size;
+
+    IntSuperIterable()
+    {
+        this(EMPTY, 0);
+    }
+
+    private IntSuperIterable(int[] values, int size)
+    {
+        this.values = values;
+        this.size = size;
+    }
+
+    public static IntSuperIterable of(int... values)
+    {
+        return new IntSuperIterable(values.clone(), values.length);
+    }
+
+    /**
+     * Appends one value, growing the buffer by half when it is full.
+     * Only used while the buffer is being built, e.g. by SuperIterable.mapToInt.
+     */
+    void add(int value)
+    {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size + (size >> 1)));
+        }
+        values[size++] = value;
+    }
+
+    void addAll(IntSuperIterable other)
+    {
+        if (size + other.size > values.length) {
+            values = Arrays.copyOf(values, size + other.size);
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public IntSuperIterable filter(IntPredicate pred) {
+        int[] kept = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (pred.test(values[i])) {
+                kept[count++] = values[i];
+            }
+        }
+        return new IntSuperIterable(kept, count);
+    }
+
+    public IntSuperIterable map(IntUnaryOperator mapper) {
+        int[] results = new int[size];
+        for (int i = 0; i < size; i++) {
+            results[i] = mapper.applyAsInt(values[i]);
+        }
+        return new IntSuperIterable(results, size);
+    }
+
+    public DoubleSuperIterable mapToDouble(IntToDoubleFunction mapper) {
+        double[] results = new double[size];
+        for (int i = 0; i < size; i++) {
+            results[i] = mapper.applyAsDouble(values[i]);
+        }
+        return new DoubleSuperIterable(results, size);
+    }
+
+    /**
+     * Goes back to objects. The returned SuperIterable is a lazy view over this buffer,
+     * so the mapper (and any boxing it does) only runs when that pipeline is pulled.
+     *
+     * @param mapper A function that turns each int into an object
+     * @param <U> The type of elements in the returned SuperIterable
+     * @return A SuperIterable over the mapped values
+     */
+    public <U> SuperIterable<U> mapToObj(IntFunction<U> mapper) {
+        int[] snapshot = values;
+        int length = size;
+        return new SuperIterable<>(new View<U>() {
+            @Override
+            public U get(int index) {
+                return mapper.apply(snapshot[index]);
+            }
+
+            @Override
+            public int size() {
+                return length;
+            }
+        });
+    }
+
+    public void forEvery(IntConsumer cons) {
+        for (int i = 0; i < size; i++) {
+            cons.accept(values[i]);
+        }
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    public OptionalInt min() {
+        if (size == 0) {
+            return OptionalInt.empty();
+        }
+        int min = values[0];
+        for (int i = 1; i < size; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return OptionalInt.of(min);
+    }
+
+    public OptionalInt max() {
+        if (size == 0) {
+            return OptionalInt.empty();
+        }
+        int max = values[0];
+        for (int i = 1; i < size; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return OptionalInt.of(max);
+    }
+
+    public OptionalDouble average() {
+        return size == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) sum() / size);
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private abstract static class View<U> extends AbstractList<U> implements RandomAccess
+    {
+    }
+}
@@ -0,0 +1,145 @@
+package com.functional.java;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the elements of an Iterable, such as a SuperIterable pipeline, to Flow
+ * subscribers. See SuperIterable.toPublisher.
+ *
+ * Each subscriber gets its own iterator, pulled only as far as it has requested.
+ * Pulling and signalling run on the executor, one drain at a time per subscriber: a
+ * request made while a drain is running just raises the demand that drain works down.
+ *
+ * @param <E> The type of elements published
+ */
+final class IterablePublisher<E> implements Flow.Publisher<E>
+{
+    private final Iterable<E> source;
+    private final Executor executor;
+
+    IterablePublisher(Iterable<E> source, Executor executor)
+    {
+        this.source = source;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super E> subscriber)
+    {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new IteratorSubscription(subscriber));
+    }
+
+    private final class IteratorSubscription implements Flow.Subscription, Runnable
+    {
+        private final Flow.Subscriber<? super E> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // number of drain requests not yet handled; the drain that takes it from 0 runs the loop
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile long badRequest;
+        private Iterator<E> iterator;
+
+        IteratorSubscription(Flow.Subscriber<? super E> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0) {
+                badRequest = n;
+            } else {
+                demand.getAndAccumulate(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            int missed = 1;
+            while (true) {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                if (badRequest != 0) {
+                    finish();
+                    subscriber.onError(new IllegalArgumentException("Subscriber requested " + badRequest
+                        + " items; requests must be positive"));
+                    return;
+                }
+                long wanted = demand.get();
+                long emitted = 0;
+                while (emitted != wanted && !cancelled) {
+                    E e;
+                    try {
+                        if (iterator == null) {
+                            iterator = source.iterator();
+                        }
+                        if (!iterator.hasNext()) {
+                            finish();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        e = iterator.next();
+                    } catch (Throwable t) {
+                        finish();
+                        subscriber.onError(t);
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(e);
+                    } catch (RuntimeException | Error t) {
+                        // a subscriber that throws is treated as cancelled (Reactive Streams rule 2.13)
+                        finish();
+                        throw t;
+                    }
+                    emitted++;
+                }
+                if (wanted != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                missed = pending.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Ends the subscription for good. pending is never brought back to 0, so later
+         * request and cancel calls do nothing.
+         */
+        private void finish() {
+            cancelled = true;
+            if (iterator instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) iterator).close();
+                } catch (Exception ignored) {
+                    // the subscriber already got its terminal signal or cancelled; nothing to report to
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Sorting and top-K selection by a primitive double key, such as Car.getGasLevel.
+ *
+ * Sorting a List with GasComparator dereferences two cars and calls getGasLevel twice
+ * for every one of the n log n comparisons. Here every key is read exactly once into a
+ * double[], and only a permutation of int indices is sorted, with a radix sort on the
+ * IEEE 754 bits of the keys. The order is the one of Double.compare (so the same as
+ * GasComparator, including -0.0 before 0.0 and NaN last), and equal keys keep their
+ * original order, as with List.sort.
+ *
+ * topK and bottomK keep only the k best elements seen so far in a bounded heap, so
+ * "the 10 cars with the least fuel out of 5 million" never sorts the other 4,999,990.
+ */
+public final class KeySort
+{
+    // below this size insertion sort beats the eight counting passes of the radix sort
+    private static final int INSERTION_SORT_THRESHOLD = 64;
+
+    private KeySort()
+    {
+    }
+
+    /**
+     * Returns the permutation that orders keys ascending: keys[result[0]] is the smallest.
+     */
+    public static int[] sortedIndices(double[] keys) {
+        return sortedIndices(keys, false);
+    }
+
+    /**
+     * Returns the permutation that orders keys ascending or descending. Equal keys keep
+     * their original relative order in both directions.
+     *
+     * @param keys The keys to order; not modified
+     * @param descending true for largest first
+     * @return Indices into keys, in sorted order
+     */
+    public static int[] sortedIndices(double[] keys, boolean descending) {
+        int n = keys.length;
+        long[] bits = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            long sortable = sortableBits(keys[i]);
+            bits[i] = descending ? ~sortable : sortable;
+            order[i] = i;
+        }
+        if (n < INSERTION_SORT_THRESHOLD) {
+            insertionSort(bits, order);
+        } else {
+            radixSort(bits, order);
+        }
+        return order;
+    }
+
+    /**
+     * Returns a new list with the items ordered by key, lowest first.
+     * Equivalent to copying the list and sorting it with Comparator.comparingDouble(key).
+     */
+    public static <E> List<E> sortByKey(List<E> items, ToDoubleFunction<? super E> key) {
+        return sortByKey(items, key, false);
+    }
+
+    /**
+     * Returns a new list with the items ordered by key.
+     *
+     * @param items The items to order; not modified
+     * @param key Extracts the sort key, called once per item
+     * @param descending true for highest key first
+     * @return A new list in key order
+     */
+    public static <E> List<E> sortByKey(List<E> items, ToDoubleFunction<? super E> key, boolean descending) {
+        @SuppressWarnings("unchecked")
+        E[] snapshot = (E[]) items.toArray();
+        double[] keys = new double[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            keys[i] = key.applyAsDouble(snapshot[i]);
+        }
+        List<E> sorted = new ArrayList<>(snapshot.length);
+        for (int index : sortedIndices(keys, descending)) {
+            sorted.add(snapshot[index]);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the k items with the lowest keys, lowest first, in one pass over the items.
+     * Ties are resolved in favour of the item seen first.
+     */
+    public static <E> List<E> bottomK(Iterable<E> items, ToDoubleFunction<? super E> key, int k) {
+        return select(items, key, k, false);
+    }
+
+    /**
+     * Returns the k items with the highest keys, highest first, in one pass over the items.
+     * Ties are resolved in favour of the item seen first.
+     */
+    public static <E> List<E> topK(Iterable<E> items, ToDoubleFunction<? super E> key, int k) {
+        return select(items, key, k, true);
+    }
+
+    /**
+     * Index form of bottomK: the indices of the k lowest keys, lowest first.
+     */
+    public static int[] bottomK(double[] keys, int k) {
+        return select(keys, k, false);
+    }
+
+    /**
+     * Index form of topK: the indices of the k highest keys, highest first.
+     */
+    public static int[] topK(double[] keys, int k) {
+        return select(keys, k, true);
+    }
+
+    private static <E> List<E> select(Iterable<E> items, ToDoubleFunction<? super E> key, int k, boolean highest) {
+        BoundedHeap heap = new BoundedHeap(k, highest);
+        int seq = 0;
+        for (E item : items) {
+            heap.offer(key.applyAsDouble(item), seq++, item);
+        }
+        Object[] best = heap.drainInOrder();
+        List<E> selected = new ArrayList<>(best.length);
+        for (Object item : best) {
+            @SuppressWarnings("unchecked")
+            E e = (E) item;
+            selected.add(e);
+        }
+        return selected;
+    }
+
+    private static int[] select(double[] keys, int k, boolean highest) {
+        BoundedHeap heap = new BoundedHeap(k, highest);
+        for (int i = 0; i < keys.length; i++) {
+            heap.offer(keys[i], i, null);
+        }
+        heap.drainInOrder();
+        return Arrays.copyOf(heap.seqs, heap.size);
+    }
+
+    /**
+     * Maps a double to a long whose signed order is the order of Double.compare.
+     * The raw bits of non-negative doubles already compare correctly as longs. Negative
+     * doubles also come out negative, but in reverse order (a larger magnitude gives a
+     * larger long), so their 63 low bits are flipped. -0.0 lands just below 0.0 and
+     * the canonical NaN above positive infinity, as in Double.compare.
+     */
+    private static long sortableBits(double key) {
+        long bits = Double.doubleToLongBits(key);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static void insertionSort(long[] bits, int[] order) {
+        for (int i = 1; i < bits.length; i++) {
+            long b = bits[i];
+            int o = order[i];
+            int j = i - 1;
+            while (j >= 0 && bits[j] > b) {
+                bits[j + 1] = bits[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            bits[j + 1] = b;
+            order[j + 1] = o;
+        }
+    }
+
+    /**
+     * Stable LSD radix sort of the keys, one byte per pass, carrying the index permutation along.
+     * A pass is skipped when every key has the same byte there, which is common for the
+     * exponent bytes of keys from a narrow range like gas levels.
+     */
+    private static void radixSort(long[] bits, int[] order) {
+        int n = bits.length;
+        long[] bitsBuffer = new long[n];
+        int[] orderBuffer = new int[n];
+        int[] counts = new int[256];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (long b : bits) {
+                counts[digit(b, shift)]++;
+            }
+            if (counts[digit(bits[0], shift)] == n) {
+                continue;
+            }
+            int total = 0;
+            for (int d = 0; d < 256; d++) {
+                int count = counts[d];
+                counts[d] = total;
+                total += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int slot = counts[digit(bits[i], shift)]++;
+                bitsBuffer[slot] = bits[i];
+                orderBuffer[slot] = order[i];
+            }
+            System.arraycopy(bitsBuffer, 0, bits, 0, n);
+            System.arraycopy(orderBuffer, 0, order, 0, n);
+        }
+    }
+
+    /**
+     * The byte of a signed long at the given shift, with the sign bit flipped on the top byte
+     * so that unsigned byte order matches signed long order.
+     */
+    private static int digit(long bits, int shift) {
+        int d = (int) (bits >>> shift) & 0xFF;
+        return shift == 56 ? d ^ 0x80 : d;
+    }
+
+    /**
+     * A heap of at most k (key, seq) pairs whose root is the worst entry kept,
+     * so a new entry only has to beat the root to get in.
+     */
+    private static final class BoundedHeap
+    {
+        private final boolean highest;
+        private final double[] keys;
+        private final int[] seqs;
+        private final Object[] items;
+        private int size;
+
+        BoundedHeap(int k, boolean highest)
+        {
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative: " + k);
+            }
+            this.highest = highest;
+            this.keys = new double[k];
+            this.seqs = new int[k];
+            this.items = new Object[k];
+        }
+
+        /**
+         * @return true if entry a should be selected before entry b
+         */
+        private boolean better(double keyA, int seqA, double keyB, int seqB) {
+            int c = Double.compare(keyA, keyB);
+            if (c == 0) {
+                return seqA < seqB;
+            }
+            return highest ? c > 0 : c < 0;
+        }
+
+        void offer(double key, int seq, Object item) {
+            if (size < keys.length) {
+                set(size, key, seq, item);
+                siftUp(size++);
+            } else if (size > 0 && better(key, seq, keys[0], seqs[0])) {
+                set(0, key, seq, item);
+                siftDown(0, size);
+            }
+        }
+
+        /**
+         * Heap-sorts the kept entries in place, best first, and returns their items.
+         * The worst entry sits at the root, so moving the root to the end each round
+         * leaves the best entries at the front.
+         */
+        Object[] drainInOrder() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return Arrays.copyOf(items, size);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!better(keys[parent], seqs[parent], keys[i], seqs[i])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int end) {
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < end && better(keys[worst], seqs[worst], keys[left], seqs[left])) {
+                    worst = left;
+                }
+                if (right < end && better(keys[worst], seqs[worst], keys[right], seqs[right])) {
+                    worst = right;
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void set(int i, double key, int seq, Object item) {
+            keys[i] = key;
+            seqs[i] = seq;
+            items[i] = item;
+        }
+
+        private void swap(int a, int b) {
+            double key = keys[a];
+            int seq = seqs[a];
+            Object item = items[a];
+            set(a, keys[b], seqs[b], items[b]);
+            set(b, key, seq, item);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.functional.java;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A file of cars, one per line, read straight from memory-mapped pages.
+ *
+ * Each line holds gasLevel,color,brand,passengers,trunk where passengers and trunk
+ * are ;-separated lists (either may be empty), e.g.
+ *
+ *   15.5,RED,Toyota,Alice;Bob,Spare Tire
+ *
+ * The file is mapped window by window with FileChannel.map, and a record is only parsed
+ * when the pipeline pulls it, so files far larger than the heap can be filtered without
+ * ever holding more than one window of them. Color, brand and item names are decoded
+ * through a small cache, so repeated values share one String.
+ *
+ * By default every record becomes a new Car. flyweight() returns a view that instead
+ * refills one Car per iterator (or per split) for every record: no allocation per record,
+ * but a Car is only valid until the next one is read, so the consumer must not keep it.
+ * Use the flyweight form for sequential or unordered scans only; an ordered parallel
+ * SuperIterable buffers elements, and would buffer the same Car many times.
+ *
+ * spliterator() splits the file at line boundaries, so a parallel SuperIterable over this
+ * file parses each part on its own thread.
+ */
+public final class MappedCarFile implements Iterable<Car>
+{
+    private static final int DEFAULT_WINDOW = 64 << 20;
+    // splits smaller than this are not worth another fork
+    private static final long MIN_SPLIT = 1 << 16;
+
+    private final Path path;
+    private final int windowSize;
+    private final boolean flyweight;
+
+    MappedCarFile(Path path, int windowSize, boolean flyweight)
+    {
+        this.path = path;
+        this.windowSize = windowSize;
+        this.flyweight = flyweight;
+    }
+
+    public static MappedCarFile open(Path path)
+    {
+        return new MappedCarFile(path, DEFAULT_WINDOW, false);
+    }
+
+    /**
+     * Returns a view of the same file that reuses one Car per iterator, see the class comment.
+     */
+    public MappedCarFile flyweight() {
+        return new MappedCarFile(path, windowSize, true);
+    }
+
+    public SuperIterable<Car> cars() {
+        return new SuperIterable<>(this);
+    }
+
+    /**
+     * Writes cars in the format this class reads.
+     *
+     * @throws IllegalArgumentException if a value contains a separator or a line break
+     */
+    public static void write(Path path, Iterable<Car> cars) throws IOException
+    {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Car car : cars) {
+                out.write(Double.toString(car.getGasLevel()));
+                out.write(',');
+                out.write(field(car.getColor()));
+                out.write(',');
+                out.write(field(car.getBrand()));
+                out.write(',');
+                out.write(items(car.getPassengers()));
+                out.write(',');
+                out.write(items(car.getTrunk()));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static String field(String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == ';' || c == '\n' || c == '\r') {
+                throw new IllegalArgumentException("Value cannot be stored in a car file: " + value);
+            }
+        }
+        return value;
+    }
+
+    private static String items(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(';');
+            }
+            joined.append(field(value));
+        }
+        return joined.toString();
+    }
+
+    @Override
+    public Iterator<Car> iterator()
+    {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Spliterator<Car> spliterator()
+    {
+        try {
+            return new RecordSpliterator(0, Files.size(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses the records that start in [position, end). Both bounds are always at the
+     * start of a line, so each record belongs to exactly one split.
+     * estimateSize reports remaining bytes, not records: only its relative size matters
+     * for splitting.
+     */
+    private final class RecordSpliterator implements Spliterator<Car>
+    {
+        private long position;
+        private final long end;
+        private final RecordParser parser = new RecordParser();
+        private final Car flyweightCar = flyweight ? new Car() : null;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        RecordSpliterator(long position, long end)
+        {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Car> action)
+        {
+            while (position < end) {
+                int to = lineEnd(mapAt(position));
+                // lineEnd may have remapped, so locate the line start again
+                int from = (int) (position - windowStart);
+                position = windowStart + to + 1;
+                if (to > from) {
+                    Car car = flyweight ? flyweightCar : new Car();
+                    parser.parse(window, from, to, car, windowStart);
+                    action.accept(car);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Car> trySplit()
+        {
+            if (end - position < 2 * MIN_SPLIT) {
+                return null;
+            }
+            long boundary = nextLineStart(position + (end - position) / 2);
+            if (boundary >= end) {
+                return null;
+            }
+            RecordSpliterator prefix = new RecordSpliterator(position, boundary);
+            position = boundary;
+            window = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | NONNULL;
+        }
+
+        /**
+         * Makes sure the window covers the given file position, remapping if needed.
+         *
+         * @return The index of that position inside the window
+         */
+        private int mapAt(long filePosition) {
+            if (window == null || filePosition < windowStart || filePosition >= windowStart + window.limit()) {
+                window = map(filePosition, (int) Math.min(windowSize, end - filePosition));
+                windowStart = filePosition;
+            }
+            return (int) (filePosition - windowStart);
+        }
+
+        /**
+         * Finds the end of the line starting at from, remapping once if the line runs past the
+         * window. Lines only run past the split end at the end of the file.
+         *
+         * @return The window index of the '\n', or of the end of the data when there is none
+         */
+        private int lineEnd(int from) {
+            int limit = window.limit();
+            for (int i = from; i < limit; i++) {
+                if (window.get(i) == '\n') {
+                    return i;
+                }
+            }
+            long windowEnd = windowStart + limit;
+            if (windowEnd >= end) {
+                return limit;
+            }
+            if (from == 0) {
+                throw new IllegalStateException("Record at byte " + windowStart + " is longer than the "
+                    + windowSize + " byte mapping window");
+            }
+            // the line continues past the window: map a new window starting at this line
+            window = map(windowStart + from, (int) Math.min(windowSize, end - (windowStart + from)));
+            windowStart += from;
+            return lineEnd(0);
+        }
+
+        /**
+         * @return The file position just after the first '\n' at or after position - 1
+         */
+        private long nextLineStart(long position) {
+            ByteBuffer chunk = ByteBuffer.allocate(4096);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long at = position - 1;
+                while (at < end) {
+                    chunk.clear();
+                    int read = channel.read(chunk, at);
+                    if (read <= 0) {
+                        return end;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (chunk.get(i) == '\n') {
+                            return at + i + 1;
+                        }
+                    }
+                    at += read;
+                }
+                return end;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private MappedByteBuffer map(long start, int length) {
+            // the mapping stays valid after the channel is closed
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Splits one line into fields and fills a Car. Field bytes are copied into a reused
+     * scratch array; strings come from the cache; simple decimal gas levels are parsed
+     * without creating a String.
+     */
+    private static final class RecordParser
+    {
+        private final StringCache strings = new StringCache();
+        private byte[] scratch = new byte[64];
+
+        void parse(ByteBuffer line, int from, int to, Car car, long windowStart) {
+            if (line.get(to - 1) == '\r') {
+                to--;
+            }
+            int gasEnd = indexOf(line, ',', from, to);
+            int colorEnd = indexOf(line, ',', gasEnd + 1, to);
+            int brandEnd = indexOf(line, ',', colorEnd + 1, to);
+            int passengersEnd = indexOf(line, ',', brandEnd + 1, to);
+            if (passengersEnd == to) {
+                throw new IllegalStateException("Malformed car record at byte " + (windowStart + from)
+                    + ": expected 5 comma-separated fields");
+            }
+            car.setGasLevel(parseDouble(line, from, gasEnd, windowStart));
+            car.setColor(string(line, gasEnd + 1, colorEnd));
+            car.setBrand(string(line, colorEnd + 1, brandEnd));
+            car.setPassengers(items(line, brandEnd + 1, passengersEnd, car.getPassengers()));
+            car.setTrunk(items(line, passengersEnd + 1, to, car.getTrunk()));
+        }
+
+        /**
+         * Refills the car's own list when it is a reusable ArrayList (the flyweight case),
+         * otherwise starts a new one.
+         */
+        private List<String> items(ByteBuffer line, int from, int to, List<String> current) {
+            List<String> items = current instanceof ArrayList ? current : new ArrayList<>();
+            items.clear();
+            while (from < to) {
+                int itemEnd = indexOf(line, ';', from, to);
+                items.add(string(line, from, itemEnd));
+                from = itemEnd + 1;
+            }
+            return items;
+        }
+
+        private String string(ByteBuffer line, int from, int to) {
+            if (from == to) {
+                return null;
+            }
+            int length = copy(line, from, to);
+            return strings.get(scratch, length);
+        }
+
+        private int copy(ByteBuffer line, int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            line.get(from, scratch, 0, length);
+            return length;
+        }
+
+        /**
+         * Parses [-]digits[.digits] exactly: the digits form an integer below 2^53 and the
+         * power of ten is exact too, so one division gives the correctly rounded double.
+         * Anything else (exponents, long mantissas, Infinity, NaN) goes through Double.parseDouble.
+         */
+        private double parseDouble(ByteBuffer line, int from, int to, long windowStart) {
+            int length = copy(line, from, to);
+            int i = 0;
+            boolean negative = length > 0 && scratch[0] == '-';
+            if (negative) {
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = -1;
+            for (; i < length; i++) {
+                byte b = scratch[i];
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                } else if (b == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else {
+                    break;
+                }
+            }
+            if (i == length && digits > 0 && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+                double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+                return negative ? -value : value;
+            }
+            String text = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Malformed gas level '" + text + "' at byte " + (windowStart + from), e);
+            }
+        }
+
+        private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private static int indexOf(ByteBuffer line, char separator, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (line.get(i) == separator) {
+                    return i;
+                }
+            }
+            return to;
+        }
+    }
+
+    /**
+     * A direct-mapped cache from UTF-8 bytes to String. A hit costs a hash and a byte
+     * comparison; a miss decodes the bytes and replaces whatever was in the slot.
+     * Colors, brands and common names repeat a lot, so most lookups hit.
+     */
+    private static final class StringCache
+    {
+        private static final int SLOTS = 1024;
+        private static final int MAX_CACHED_LENGTH = 64;
+
+        private final byte[][] keys = new byte[SLOTS][];
+        private final String[] values = new String[SLOTS];
+
+        String get(byte[] bytes, int length) {
+            if (length > MAX_CACHED_LENGTH) {
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (SLOTS - 1);
+            byte[] key = keys[slot];
+            if (key != null && Arrays.equals(key, 0, key.length, bytes, 0, length)) {
+                return values[slot];
+            }
+            String value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            keys[slot] = Arrays.copyOf(bytes, length);
+            values[slot] = value;
+            return value;
+        }
+    }
+}
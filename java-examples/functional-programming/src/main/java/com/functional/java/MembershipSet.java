@@ -0,0 +1,91 @@
+package com.functional.java;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable set built once for fast, allocation-free contains() calls.
+ * Small sets are kept in a plain array and scanned, which beats hashing for a handful
+ * of values; larger sets use an open-addressing table with linear probing, so a lookup
+ * is one hashCode() call and usually a single equals().
+ *
+ * @param <K> The type of values in the set
+ */
+final class MembershipSet<K>
+{
+    // up to this many values a linear scan is at least as fast as a hash lookup
+    private static final int SMALL = 8;
+
+    private final Object[] values;
+    private final boolean containsNull;
+    // null for small sets
+    private final Object[] table;
+    private final int mask;
+
+    MembershipSet(Collection<? extends K> values)
+    {
+        Set<K> distinct = new LinkedHashSet<>(values);
+        this.containsNull = distinct.remove(null);
+        this.values = distinct.toArray();
+        if (this.values.length <= SMALL) {
+            this.table = null;
+            this.mask = 0;
+        } else {
+            // at most half full, so probe sequences stay short
+            int capacity = Integer.highestOneBit(this.values.length * 2 - 1) << 1;
+            this.table = new Object[capacity];
+            this.mask = capacity - 1;
+            for (Object value : this.values) {
+                int slot = spread(value.hashCode()) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    boolean contains(Object key) {
+        if (key == null) {
+            return containsNull;
+        }
+        if (table == null) {
+            for (Object value : values) {
+                if (value.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int slot = spread(key.hashCode()) & mask;
+        Object candidate;
+        while ((candidate = table[slot]) != null) {
+            if (candidate.equals(key)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<K> values() {
+        Object[] all = containsNull ? Arrays.copyOf(values, values.length + 1) : values.clone();
+        return (List<K>) Arrays.asList(all);
+    }
+
+    int size() {
+        return values.length + (containsNull ? 1 : 0);
+    }
+
+    /**
+     * Mixes the high bits of a hash code into the low ones, as HashMap does,
+     * so keys whose hash codes only differ in the high bits still spread over the table.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
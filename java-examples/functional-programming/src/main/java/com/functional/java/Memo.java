@@ -0,0 +1,484 @@
+package com.functional.java;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A memoizing function: computes fn once per key and answers repeated keys from a
+ * bounded cache. Use it wherever a Function is expected, e.g.
+ * cars.map(lookup.on(Car::getBrand)) with lookup = Memo.of(this::brandInfo, 1000, Policy.TINY_LFU),
+ * or for a Criterion through Criterion.memoized.
+ *
+ * The cache is split into segments by key hash, each with its own lock, so threads
+ * working on different keys rarely wait for each other. The function itself runs
+ * outside any lock. Threads asking for a key that is still being computed wait for
+ * that computation instead of starting their own, so with mapAsync or a parallel
+ * pipeline a key is still computed only once. For the same reason fn must not call the
+ * memo for its own key. If fn throws, nothing is cached and the next call for the key
+ * tries again.
+ *
+ * When a segment is full an entry is evicted by the chosen Policy:
+ * - LRU drops the entry used least recently.
+ * - TINY_LFU (W-TinyLFU) puts new keys into a small LRU window first. A key that
+ *   falls out of the window only replaces the main cache's eviction candidate if it has
+ *   been asked for more often, going by a compact count-min sketch of recent lookups.
+ *   A one-off scan over many keys therefore does not flush out the keys that are used
+ *   all the time.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of computed values
+ */
+public final class Memo<K, V> implements Function<K, V>
+{
+    public enum Policy
+    {
+        LRU,
+        TINY_LFU
+    }
+
+    private final Function<? super K, ? extends V> fn;
+    private final Segment<K, V>[] segments;
+    private final long expireNanos;
+    private final LongSupplier ticker;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    private Memo(Function<? super K, ? extends V> fn, int maxSize, Policy policy, Duration expireAfterWrite,
+                 LongSupplier ticker)
+    {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.fn = Objects.requireNonNull(fn);
+        this.expireNanos = expireAfterWrite == null ? Long.MAX_VALUE : expireAfterWrite.toNanos();
+        this.ticker = Objects.requireNonNull(ticker);
+        // about two segments per core, but no segment smaller than 16 entries
+        int wanted = Math.min(Runtime.getRuntime().availableProcessors() * 2, Math.max(1, maxSize / 16));
+        int count = Integer.highestOneBit(Math.max(1, wanted));
+        int capacity = (maxSize + count - 1) / count;
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = policy == Policy.LRU ? new LruSegment<>(capacity) : new TinyLfuSegment<>(capacity);
+        }
+    }
+
+    /**
+     * Memoizes a function, keeping at most about maxSize results.
+     *
+     * @param fn The function to memoize
+     * @param maxSize The most results kept; the capacity is split evenly over the segments
+     * @param policy Which result to drop when full
+     * @param <K> The type of keys
+     * @param <V> The type of computed values
+     * @return A memoizing function
+     */
+    public static <K, V> Memo<K, V> of(Function<? super K, ? extends V> fn, int maxSize, Policy policy) {
+        return new Memo<>(fn, maxSize, policy, null, System::nanoTime);
+    }
+
+    /**
+     * Like of(Function, int, Policy), but results older than expireAfterWrite are computed again.
+     */
+    public static <K, V> Memo<K, V> of(Function<? super K, ? extends V> fn, int maxSize, Policy policy,
+                                       Duration expireAfterWrite) {
+        return of(fn, maxSize, policy, expireAfterWrite, System::nanoTime);
+    }
+
+    /**
+     * Like of(Function, int, Policy, Duration), with the time read from ticker in
+     * nanoseconds instead of System.nanoTime, so tests can move the clock themselves.
+     */
+    static <K, V> Memo<K, V> of(Function<? super K, ? extends V> fn, int maxSize, Policy policy,
+                                Duration expireAfterWrite, LongSupplier ticker) {
+        return new Memo<>(fn, maxSize, policy, Objects.requireNonNull(expireAfterWrite), ticker);
+    }
+
+    @Override
+    public V apply(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        long now = expireNanos == Long.MAX_VALUE ? 0 : ticker.getAsLong();
+        Node<K, V> node;
+        boolean computing = false;
+        segment.lock.lock();
+        try {
+            node = segment.get(key);
+            if (node != null && now - node.writtenAt >= expireNanos) {
+                segment.remove(node);
+                node = null;
+            }
+            if (node == null) {
+                node = new Node<>(key, new FutureTask<>(() -> fn.apply(key)), now);
+                evictions.add(segment.put(node));
+                computing = true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (computing) {
+            misses.increment();
+            node.value.run();
+        } else {
+            hits.increment();
+        }
+        try {
+            return node.value.get();
+        } catch (ExecutionException e) {
+            forget(segment, node);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Applies this memo to a key taken from the input, e.g. memo.on(Car::getBrand)
+     * computes once per brand, not once per car.
+     */
+    public <T> Function<T, V> on(Function<? super T, ? extends K> key) {
+        return t -> apply(key.apply(t));
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "Memo{size=" + size() + ", " + stats() + "}";
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = Objects.hashCode(key) * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private void forget(Segment<K, V> segment, Node<K, V> node) {
+        segment.lock.lock();
+        try {
+            segment.remove(node);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Counts of a memo since it was created.
+     */
+    public static final class Stats
+    {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Stats(long hits, long misses, long evictions)
+        {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return Calls answered without running the function, including calls that waited
+         *         for another thread's computation of the same key
+         */
+        public long hits() {
+            return hits;
+        }
+
+        /**
+         * @return Calls that ran the function
+         */
+        public long misses() {
+            return misses;
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        /**
+         * @return hits / (hits + misses), or NaN before the first call
+         */
+        public double hitRate() {
+            long calls = hits + misses;
+            return calls == 0 ? Double.NaN : (double) hits / calls;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%,d misses=%,d evictions=%,d hitRate=%.1f%%", hits, misses, evictions, hitRate() * 100);
+        }
+    }
+
+    /**
+     * A cached result. The value is the computation itself, so threads that find a node
+     * still being computed can wait on it.
+     */
+    private static final class Node<K, V>
+    {
+        final K key;
+        final FutureTask<V> value;
+        final long writtenAt;
+
+        Node(K key, FutureTask<V> value, long writtenAt)
+        {
+            this.key = key;
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    /**
+     * One lock and the entries of the keys that hash to it. All methods are called with
+     * the lock held.
+     */
+    private abstract static class Segment<K, V>
+    {
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Looks a key up and records the use.
+         */
+        abstract Node<K, V> get(K key);
+
+        /**
+         * Adds a node for a key that is not cached.
+         *
+         * @return The number of entries evicted to make room
+         */
+        abstract int put(Node<K, V> node);
+
+        abstract void remove(Node<K, V> node);
+
+        abstract int size();
+
+        abstract void clear();
+    }
+
+    private static final class LruSegment<K, V> extends Segment<K, V>
+    {
+        private final int capacity;
+        private final LinkedHashMap<K, Node<K, V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        LruSegment(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        @Override
+        Node<K, V> get(K key) {
+            return entries.get(key);
+        }
+
+        @Override
+        int put(Node<K, V> node) {
+            entries.put(node.key, node);
+            if (entries.size() > capacity) {
+                entries.pollFirstEntry();
+                return 1;
+            }
+            return 0;
+        }
+
+        @Override
+        void remove(Node<K, V> node) {
+            entries.remove(node.key, node);
+        }
+
+        @Override
+        int size() {
+            return entries.size();
+        }
+
+        @Override
+        void clear() {
+            entries.clear();
+        }
+    }
+
+    /**
+     * W-TinyLFU: a window LRU of about 1% of the capacity in front of a segmented LRU main
+     * cache, a probation part for keys that were admitted but not used again yet and a
+     * protected part (80% of the main cache) for keys used at least twice.
+     */
+    private static final class TinyLfuSegment<K, V> extends Segment<K, V>
+    {
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, Node<K, V>> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Node<K, V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, Node<K, V>> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+
+        TinyLfuSegment(int capacity)
+        {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = capacity - windowCapacity;
+            this.protectedCapacity = mainCapacity * 8 / 10;
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        @Override
+        Node<K, V> get(K key) {
+            sketch.increment(key);
+            Node<K, V> node = window.get(key);
+            if (node != null) {
+                return node;
+            }
+            node = probation.remove(key);
+            if (node != null) {
+                protectedEntries.put(key, node);
+                if (protectedEntries.size() > protectedCapacity) {
+                    Map.Entry<K, Node<K, V>> demoted = protectedEntries.pollFirstEntry();
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+                return node;
+            }
+            return protectedEntries.get(key);
+        }
+
+        @Override
+        int put(Node<K, V> node) {
+            window.put(node.key, node);
+            if (window.size() <= windowCapacity) {
+                return 0;
+            }
+            Map.Entry<K, Node<K, V>> candidate = window.pollFirstEntry();
+            if (probation.size() + protectedEntries.size() < mainCapacity) {
+                probation.put(candidate.getKey(), candidate.getValue());
+                return 0;
+            }
+            LinkedHashMap<K, Node<K, V>> victims = probation.isEmpty() ? protectedEntries : probation;
+            Map.Entry<K, Node<K, V>> victim = victims.firstEntry();
+            if (victim != null && sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                victims.pollFirstEntry();
+                probation.put(candidate.getKey(), candidate.getValue());
+            }
+            // either the victim or the candidate is gone
+            return 1;
+        }
+
+        @Override
+        void remove(Node<K, V> node) {
+            if (!window.remove(node.key, node) && !probation.remove(node.key, node)) {
+                protectedEntries.remove(node.key, node);
+            }
+        }
+
+        @Override
+        int size() {
+            return window.size() + probation.size() + protectedEntries.size();
+        }
+
+        @Override
+        void clear() {
+            window.clear();
+            probation.clear();
+            protectedEntries.clear();
+        }
+    }
+
+    /**
+     * Approximate recent lookup counts: a count-min sketch of four rows of counters that
+     * stop at 15. All counters are halved after 10 lookups per cached entry, so a key that
+     * was popular long ago loses out to one that is popular now.
+     */
+    private static final class FrequencySketch
+    {
+        private static final int[] SEEDS = {0x97CB3127, 0xB5ADDED3, 0xC2B2AE35, 0x27D4EB2F};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows = new byte[SEEDS.length][];
+        private final int mask;
+        private final int resetAt;
+        private int additions;
+
+        FrequencySketch(int capacity)
+        {
+            int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            this.mask = width - 1;
+            this.resetAt = 10 * Math.max(16, capacity);
+        }
+
+        void increment(Object key) {
+            int h = Objects.hashCode(key);
+            for (int i = 0; i < rows.length; i++) {
+                int slot = index(h, i);
+                if (rows[i][slot] < MAX_COUNT) {
+                    rows[i][slot]++;
+                }
+            }
+            if (++additions == resetAt) {
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int h = Objects.hashCode(key);
+            int min = MAX_COUNT;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][index(h, i)]);
+            }
+            return min;
+        }
+
+        private int index(int h, int row) {
+            int x = (h ^ SEEDS[row]) * SEEDS[row];
+            return (x ^ (x >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.functional.java;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * Collectors for the reductions in CollectorOperators that the JDK ones make expensive
+ * on large or parallel inputs.
+ */
+public final class MoreCollectors
+{
+    private MoreCollectors()
+    {
+    }
+
+    /**
+     * A concurrent replacement for groupingBy(key, counting()).
+     *
+     * groupingBy builds one HashMap per thread of a parallel stream, merges them pairwise
+     * at the end and boxes every intermediate count into a Long. This collector is CONCURRENT
+     * and UNORDERED instead: all threads add into one ConcurrentHashMap of LongAdder counters,
+     * so there is no merge phase, and threads counting the same key update different cells of
+     * its adder instead of fighting over one. The result is a read-only Map view that sums a
+     * counter when it is read; getLong reads a count without boxing.
+     *
+     * @param key Classifies elements, like the classifier of groupingBy; must not return null
+     * @return A collector to a Map from key to the number of elements with that key
+     */
+    public static <T, K> Collector<T, ?, CountingMap<K>> countingBy(Function<? super T, ? extends K> key) {
+        return summingBy(key, e -> 1L);
+    }
+
+    /**
+     * A concurrent replacement for groupingBy(key, summingLong(value)); see countingBy.
+     */
+    public static <T, K> Collector<T, ?, CountingMap<K>> summingBy(Function<? super T, ? extends K> key,
+                                                                  ToLongFunction<? super T> value) {
+        return Collector.of(
+            CountingMap::new,
+            (map, e) -> map.add(key.apply(e), value.applyAsLong(e)),
+            (left, right) -> {
+                right.counters.forEach((k, counter) -> left.add(k, counter.sum()));
+                return left;
+            },
+            Collector.Characteristics.CONCURRENT,
+            Collector.Characteristics.UNORDERED,
+            Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Collects into a map that iterates in the given order, replacing the
+     * entrySet().stream().sorted(order).collect(toMap(..., LinkedHashMap::new)) pattern.
+     * Entries are gathered in one array, sorted once, and become the map itself.
+     *
+     * @param key Extracts the key of each element
+     * @param value Extracts the value of each element
+     * @param order The iteration order, e.g. Entry.comparingByValue(...) or Entry.comparingByKey(...)
+     * @return A collector to a read-only map in that order
+     * @throws IllegalStateException from the collect call if two elements have equal keys
+     */
+    public static <T, K, V> Collector<T, ?, Map<K, V>> toSortedMap(Function<? super T, ? extends K> key,
+                                                                  Function<? super T, ? extends V> value,
+                                                                  Comparator<? super Entry<K, V>> order) {
+        return toSortedMap(key, value, order, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like toSortedMap, but keeps only the first limit entries of the order, for leaderboard
+     * style queries. Only the best limit entries seen so far are held, in a bounded heap,
+     * so n elements cost O(n log limit) instead of a full sort. Duplicate keys are only
+     * detected among the entries that are kept.
+     */
+    public static <T, K, V> Collector<T, ?, Map<K, V>> toSortedMap(Function<? super T, ? extends K> key,
+                                                                  Function<? super T, ? extends V> value,
+                                                                  Comparator<? super Entry<K, V>> order,
+                                                                  int limit) {
+        return Collector.<T, SortedArrayMap.Builder<K, V>, Map<K, V>>of(
+            () -> new SortedArrayMap.Builder<>(order, limit),
+            (builder, e) -> builder.add(key.apply(e), value.apply(e)),
+            SortedArrayMap.Builder::addAll,
+            SortedArrayMap.Builder::build);
+    }
+
+    /**
+     * Returns the limit entries of a map with the first values in the given order, in that order.
+     *
+     * @param map The map to rank; not modified
+     * @param order The order of the values
+     * @param limit How many entries to keep at most
+     * @return A read-only map of at most limit entries
+     */
+    public static <K, V> Map<K, V> sortedByValue(Map<K, V> map, Comparator<? super V> order, int limit) {
+        SortedArrayMap.Builder<K, V> builder = new SortedArrayMap.Builder<>(
+            (a, b) -> order.compare(a.getValue(), b.getValue()), limit);
+        for (Entry<K, V> entry : map.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * A replacement for Collectors.joining(delimiter, prefix, suffix) for large outputs.
+     *
+     * Elements are not copied while collecting: their Strings are kept in chunks together
+     * with a running total length. Merging two partial results of a parallel stream just
+     * links their chunks, instead of appending one StringBuilder to another. The text is
+     * only laid out at the end, either into one String allocated at its exact final size
+     * or straight to a Writer or channel without ever building the String.
+     *
+     * @return A collector to a Joined result
+     */
+    public static Collector<CharSequence, ?, Joined> joining(CharSequence delimiter, CharSequence prefix,
+                                                             CharSequence suffix) {
+        String d = delimiter.toString();
+        String p = prefix.toString();
+        String s = suffix.toString();
+        return Collector.of(
+            () -> new Joined(d, p, s),
+            Joined::add,
+            Joined::append,
+            Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    public static Collector<CharSequence, ?, Joined> joining(CharSequence delimiter) {
+        return joining(delimiter, "", "");
+    }
+
+    /**
+     * The elements of a joining collection, not yet laid out as one text. toString builds
+     * the String; writeTo streams the text instead.
+     */
+    public static final class Joined
+    {
+        private static final int FIRST_CHUNK = 16;
+        private static final int MAX_CHUNK = 1024;
+
+        private final String delimiter;
+        private final String prefix;
+        private final String suffix;
+        private final List<Chunk> chunks = new ArrayList<>();
+        private long count;
+        private long partsLength;
+
+        Joined(String delimiter, String prefix, String suffix)
+        {
+            this.delimiter = delimiter;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        void add(CharSequence part) {
+            String text = String.valueOf(part);
+            Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (last == null || last.size == last.parts.length) {
+                last = new Chunk(last == null ? FIRST_CHUNK : Math.min(MAX_CHUNK, last.parts.length * 2));
+                chunks.add(last);
+            }
+            last.parts[last.size++] = text;
+            count++;
+            partsLength += text.length();
+        }
+
+        /**
+         * Takes over the chunks of a later partial result; the other result must not be used afterwards.
+         */
+        Joined append(Joined other) {
+            chunks.addAll(other.chunks);
+            count += other.count;
+            partsLength += other.partsLength;
+            return this;
+        }
+
+        /**
+         * @return The length in chars of the joined text, known without building it
+         */
+        public long length() {
+            return prefix.length() + partsLength + Math.max(0, count - 1) * delimiter.length() + suffix.length();
+        }
+
+        /**
+         * Writes the joined text, e.g. to a BufferedWriter over a file.
+         */
+        public void writeTo(Writer out) throws IOException {
+            out.write(prefix);
+            boolean first = true;
+            for (Chunk chunk : chunks) {
+                for (int i = 0; i < chunk.size; i++) {
+                    if (!first) {
+                        out.write(delimiter);
+                    }
+                    out.write(chunk.parts[i]);
+                    first = false;
+                }
+            }
+            out.write(suffix);
+        }
+
+        /**
+         * Encodes the joined text straight into a channel through one reused byte buffer.
+         */
+        public void writeTo(WritableByteChannel channel, Charset charset) throws IOException {
+            CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            encode(prefix, encoder, buffer, channel);
+            boolean first = true;
+            for (Chunk chunk : chunks) {
+                for (int i = 0; i < chunk.size; i++) {
+                    if (!first) {
+                        encode(delimiter, encoder, buffer, channel);
+                    }
+                    encode(chunk.parts[i], encoder, buffer, channel);
+                    first = false;
+                }
+            }
+            encode(suffix, encoder, buffer, channel);
+            CharBuffer end = CharBuffer.allocate(0);
+            while (encoder.encode(end, buffer, true).isOverflow()) {
+                drain(buffer, channel);
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                drain(buffer, channel);
+            }
+            drain(buffer, channel);
+        }
+
+        private static void encode(String text, CharsetEncoder encoder, ByteBuffer buffer,
+                                   WritableByteChannel channel) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (encoder.encode(chars, buffer, false).isOverflow()) {
+                drain(buffer, channel);
+            }
+        }
+
+        private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Lays the text out in a builder of exactly the final length, so it is copied once.
+         *
+         * @throws IllegalStateException if the text is too long for a String; use writeTo
+         */
+        @Override
+        public String toString() {
+            long length = length();
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Joined text of " + length + " chars is too long for a String");
+            }
+            StringBuilder text = new StringBuilder((int) length);
+            try {
+                writeTo(new Writer() {
+                    @Override
+                    public void write(String str) {
+                        text.append(str);
+                    }
+
+                    @Override
+                    public void write(char[] cbuf, int off, int len) {
+                        text.append(cbuf, off, len);
+                    }
+
+                    @Override
+                    public void flush() {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return text.toString();
+        }
+
+        private static final class Chunk
+        {
+            final String[] parts;
+            int size;
+
+            Chunk(int capacity)
+            {
+                parts = new String[capacity];
+            }
+        }
+    }
+
+    /**
+     * Per-key long totals backed by striped counters. Reads see a moving snapshot while
+     * a collection is still adding; once collect returns, the values are final.
+     *
+     * @param <K> The type of keys
+     */
+    public static final class CountingMap<K> extends AbstractMap<K, Long>
+    {
+        private final ConcurrentHashMap<K, LongAdder> counters = new ConcurrentHashMap<>();
+
+        CountingMap()
+        {
+        }
+
+        void add(K key, long amount) {
+            Objects.requireNonNull(key, "element cannot be mapped to a null key");
+            LongAdder counter = counters.get(key);
+            if (counter == null) {
+                // only the first element of a key pays for computeIfAbsent
+                counter = counters.computeIfAbsent(key, ignored -> new LongAdder());
+            }
+            counter.add(amount);
+        }
+
+        /**
+         * @return The total for a key, or 0 when no element had that key
+         */
+        public long getLong(Object key) {
+            LongAdder counter = key == null ? null : counters.get(key);
+            return counter == null ? 0 : counter.sum();
+        }
+
+        @Override
+        public Long get(Object key) {
+            LongAdder counter = key == null ? null : counters.get(key);
+            return counter == null ? null : counter.sum();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key != null && counters.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return counters.size();
+        }
+
+        @Override
+        public Set<Entry<K, Long>> entrySet() {
+            return new AbstractSet<Entry<K, Long>>() {
+                @Override
+                public Iterator<Entry<K, Long>> iterator() {
+                    Iterator<Entry<K, LongAdder>> entries = counters.entrySet().iterator();
+                    return new Iterator<Entry<K, Long>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Entry<K, Long> next() {
+                            Entry<K, LongAdder> entry = entries.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return counters.size();
+                }
+            };
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return Collections.unmodifiableSet(counters.keySet());
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.functional.java;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable map that is cheap to change by making a changed copy, the map
+ * counterpart of PersistentVector.
+ *
+ * It is a hash array mapped trie (HAMT): each node covers 5 bits of the key's hash and
+ * stores only the slots in use, found through a 32-bit bitmap and Integer.bitCount,
+ * so a sparse node takes no more room than its entries. plus and minus copy the path
+ * from the root to one entry, at most seven small arrays, and share the rest. Keys
+ * whose whole hashes collide share a collision node.
+ *
+ * Like PersistentVector it can be shared between threads without copies or locks. The
+ * Map methods that would modify it throw UnsupportedOperationException. Null keys and
+ * values are allowed.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(new BitmapNode(0, new Object[0]), 0);
+
+    // never serialized: writeReplace writes a SerializedForm instead
+    @SuppressWarnings("serial")
+    private final Node root;
+    private final int size;
+    private transient Set<Map.Entry<K, V>> entries;
+
+    private PersistentMap(Node root, int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Copies a map. Returns the argument itself if it is a PersistentMap already.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> from(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap) {
+            return (PersistentMap<K, V>) map;
+        }
+        PersistentMap<K, V> result = empty();
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            result = result.plus(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return A map that also maps key to value; this map is unchanged
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.plus(0, new Leaf(hash(key), key, value), added);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return A map without key; this map if it had no such key
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        Object newRoot = root.minus(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return empty();
+        }
+        Node node = newRoot instanceof Leaf ? BitmapNode.of(0, (Leaf) newRoot) : (Node) newRoot;
+        return new PersistentMap<>(node, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = root.find(0, hash(key), key);
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        Leaf leaf = root.find(0, hash(key), key);
+        return leaf == null ? defaultValue : (V) leaf.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root.find(0, hash(key), key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> set = entries;
+        if (set == null) {
+            set = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entries = set;
+        }
+        return set;
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private static int slotBit(int shift, int hash) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Serializes the entries rather than the trie: the trie is laid out by hash codes,
+     * which for keys without their own hashCode differ from one JVM to the next. The
+     * map read back is rebuilt from the entries with plus.
+     */
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("PersistentMap is read through its SerializedForm");
+    }
+
+    private static final class SerializedForm implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private transient PersistentMap<Object, Object> map;
+
+        @SuppressWarnings("unchecked")
+        SerializedForm(PersistentMap<?, ?> map)
+        {
+            this.map = (PersistentMap<Object, Object>) map;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(map.size());
+            for (Map.Entry<Object, Object> e : map.entrySet()) {
+                out.writeObject(e.getKey());
+                out.writeObject(e.getValue());
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int size = in.readInt();
+            if (size < 0) {
+                throw new InvalidObjectException("Negative size " + size);
+            }
+            PersistentMap<Object, Object> result = empty();
+            for (int i = 0; i < size; i++) {
+                result = result.plus(in.readObject(), in.readObject());
+            }
+            map = result;
+        }
+
+        // an empty map reads back as the shared empty instance
+        private Object readResolve() {
+            return map;
+        }
+    }
+
+    /**
+     * One key-value pair. Leaves are immutable and double as the map's entries.
+     */
+    private static final class Leaf implements Map.Entry<Object, Object>
+    {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value)
+        {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException("PersistentMap entries are immutable");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private abstract static class Node
+    {
+        abstract Leaf find(int shift, int hash, Object key);
+
+        /**
+         * @param added Set to true if the key was not in the map before
+         * @return The node with the leaf added, or this node if the map already had that exact entry
+         */
+        abstract Node plus(int shift, Leaf leaf, boolean[] added);
+
+        /**
+         * @return This node if it has no such key, null if the key was its last entry,
+         *         a Leaf if one entry is left that the parent can hold itself, or the smaller node
+         */
+        abstract Object minus(int shift, int hash, Object key);
+
+        /**
+         * @return The children, each a Leaf or a Node
+         */
+        abstract Object[] slots();
+    }
+
+    /**
+     * A node whose bitmap tells which of its 32 slots are in use; slots holds only those,
+     * in slot order. Each is a Leaf or, where hashes share these 5 bits, a child Node.
+     */
+    private static final class BitmapNode extends Node
+    {
+        final int bitmap;
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots)
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        static BitmapNode of(int shift, Leaf leaf) {
+            return new BitmapNode(slotBit(shift, leaf.hash), new Object[]{leaf});
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            int bit = slotBit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[index(bit)];
+            if (slot instanceof Node) {
+                return ((Node) slot).find(shift + BITS, hash, key);
+            }
+            Leaf leaf = (Leaf) slot;
+            return leaf.hash == hash && Objects.equals(leaf.key, key) ? leaf : null;
+        }
+
+        @Override
+        Node plus(int shift, Leaf leaf, boolean[] added) {
+            int bit = slotBit(shift, leaf.hash);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                copy[index] = leaf;
+                System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node) {
+                replacement = ((Node) slot).plus(shift + BITS, leaf, added);
+            } else {
+                Leaf existing = (Leaf) slot;
+                if (existing.hash == leaf.hash && Objects.equals(existing.key, leaf.key)) {
+                    replacement = existing.value == leaf.value ? existing : leaf;
+                } else {
+                    added[0] = true;
+                    replacement = split(shift + BITS, existing, leaf);
+                }
+            }
+            if (replacement == slot) {
+                return this;
+            }
+            Object[] copy = slots.clone();
+            copy[index] = replacement;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        /**
+         * Builds the subtree for two leaves with different keys that met in one slot.
+         */
+        private static Node split(int shift, Leaf a, Leaf b) {
+            if (a.hash == b.hash) {
+                return new CollisionNode(a.hash, new Leaf[]{a, b});
+            }
+            boolean[] ignored = new boolean[1];
+            return of(shift, a).plus(shift, b, ignored);
+        }
+
+        @Override
+        Object minus(int shift, int hash, Object key) {
+            int bit = slotBit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Node) {
+                replacement = ((Node) slot).minus(shift + BITS, hash, key);
+                if (replacement == slot) {
+                    return this;
+                }
+            } else {
+                Leaf leaf = (Leaf) slot;
+                if (leaf.hash != hash || !Objects.equals(leaf.key, key)) {
+                    return this;
+                }
+                replacement = null;
+            }
+            if (replacement != null) {
+                Object[] copy = slots.clone();
+                copy[index] = replacement;
+                return new BitmapNode(bitmap, copy);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            if (slots.length == 2 && slots[1 - index] instanceof Leaf) {
+                // a single leaf is kept in the parent's slot instead of a node of its own
+                return slots[1 - index];
+            }
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+    }
+
+    /**
+     * The leaves of keys with the same full hash, searched with equals.
+     */
+    private static final class CollisionNode extends Node
+    {
+        final int hash;
+        final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves)
+        {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (Objects.equals(leaves[i].key, key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int i = indexOf(key);
+            return i < 0 ? null : leaves[i];
+        }
+
+        @Override
+        Node plus(int shift, Leaf leaf, boolean[] added) {
+            if (leaf.hash != hash) {
+                // the new key only shares the bits seen so far: push this node one level down
+                return new BitmapNode(slotBit(shift, hash), new Object[]{this}).plus(shift, leaf, added);
+            }
+            int i = indexOf(leaf.key);
+            if (i >= 0) {
+                if (leaves[i].value == leaf.value) {
+                    return this;
+                }
+                Leaf[] copy = leaves.clone();
+                copy[i] = leaf;
+                return new CollisionNode(hash, copy);
+            }
+            Leaf[] copy = Arrays.copyOf(leaves, leaves.length + 1);
+            copy[leaves.length] = leaf;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Object minus(int shift, int hash, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            if (leaves.length == 2) {
+                return leaves[1 - i];
+            }
+            Leaf[] copy = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, copy, 0, i);
+            System.arraycopy(leaves, i + 1, copy, i, leaves.length - i - 1);
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Object[] slots() {
+            return leaves;
+        }
+    }
+
+    /**
+     * Depth-first walk over the leaves, with an explicit stack of node positions.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>>
+    {
+        private final ArrayDeque<Object[]> nodes = new ArrayDeque<>();
+        private final ArrayDeque<Integer> positions = new ArrayDeque<>();
+        private Leaf next;
+
+        EntryIterator(Node root)
+        {
+            nodes.push(root.slots());
+            positions.push(0);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (!nodes.isEmpty()) {
+                Object[] slots = nodes.peek();
+                int position = positions.pop();
+                if (position == slots.length) {
+                    nodes.pop();
+                    continue;
+                }
+                positions.push(position + 1);
+                Object slot = slots[position];
+                if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                }
+                nodes.push(((Node) slot).slots());
+                positions.push(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = (Map.Entry<K, V>) (Map.Entry<?, ?>) next;
+            advance();
+            return entry;
+        }
+    }
+}
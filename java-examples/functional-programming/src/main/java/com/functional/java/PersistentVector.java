@@ -0,0 +1,361 @@
+package com.functional.java;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list that is cheap to change by making a changed copy.
+ *
+ * The elements live in the leaves of a trie with 32 children per node, plus a tail array
+ * holding the last up to 32 elements. plus (append) and with (replace one element) copy
+ * only the path from the root to the one leaf they touch, at most log32(n) arrays of 32
+ * slots, and share everything else with the original. A vector of a million elements
+ * is four levels deep. slice shares the whole trie with the vector it is cut from.
+ *
+ * Because no vector ever changes after it is built, vectors can be handed to other
+ * threads, cached and shared between derived lists without copies or locks. The
+ * List methods that would modify it throw UnsupportedOperationException.
+ *
+ * @param <E> The type of elements
+ */
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess, Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0], 0, 0);
+
+    // number of elements in the trie and tail; a slice may show fewer
+    private final int count;
+    private final int shift;
+    // never serialized: writeReplace writes a SerializedForm instead
+    @SuppressWarnings("serial")
+    private final Object[] root;
+    @SuppressWarnings("serial")
+    private final Object[] tail;
+    // the slice [start, end) of the elements that this vector shows
+    private final int start;
+    private final int end;
+
+    private PersistentVector(int count, int shift, Object[] root, Object[] tail, int start, int end)
+    {
+        this.count = count;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+        this.start = start;
+        this.end = end;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    @SafeVarargs
+    public static <E> PersistentVector<E> of(E... elements) {
+        Builder<E> builder = builder();
+        for (E e : elements) {
+            builder.add(e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Copies elements into a new vector. Returns the argument itself if it is a vector already.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> from(Iterable<? extends E> elements) {
+        if (elements instanceof PersistentVector) {
+            return (PersistentVector<E>) elements;
+        }
+        Builder<E> builder = builder();
+        for (E e : elements) {
+            builder.add(e);
+        }
+        return builder.build();
+    }
+
+    public static <E> Builder<E> builder() {
+        return new Builder<>();
+    }
+
+    @Override
+    public int size() {
+        return end - start;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        int i = checkIndex(index) + start;
+        return (E) leafFor(i)[i & MASK];
+    }
+
+    /**
+     * @return A vector with e appended; this vector is unchanged
+     */
+    public PersistentVector<E> plus(E e) {
+        if (end < count) {
+            // a slice that stops before the end: the slot after it is free for this vector to reuse
+            return withElement(end, e).resize(start, end + 1);
+        }
+        if (count - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = e;
+            return new PersistentVector<>(count + 1, shift, root, newTail, start, end + 1);
+        }
+        PersistentVector<E> pushed = pushTail();
+        return new PersistentVector<>(count + 1, pushed.shift, pushed.root, new Object[]{e}, start, end + 1);
+    }
+
+    /**
+     * @return A vector with the element at index replaced by e; this vector is unchanged
+     */
+    public PersistentVector<E> with(int index, E e) {
+        return withElement(checkIndex(index) + start, e);
+    }
+
+    /**
+     * Returns the elements from (inclusive) to (exclusive) as a vector that shares all of
+     * this vector's storage. Appending to the slice reuses the slot after it, in a copy.
+     */
+    public PersistentVector<E> slice(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("Slice [" + from + ", " + to + ") of vector of size " + size());
+        }
+        return resize(start + from, start + to);
+    }
+
+    /**
+     * Same as slice, so subList views are vectors too.
+     */
+    @Override
+    public PersistentVector<E> subList(int from, int to) {
+        return slice(from, to);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next = start;
+            private Object[] leaf;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                // one trie walk per leaf of 32 elements, not per element
+                if (leaf == null || (next & MASK) == 0) {
+                    leaf = leafFor(next);
+                }
+                return (E) leaf[next++ & MASK];
+            }
+        };
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside of vector of size " + size());
+        }
+        return index;
+    }
+
+    private PersistentVector<E> resize(int newStart, int newEnd) {
+        return new PersistentVector<>(count, shift, root, tail, newStart, newEnd);
+    }
+
+    /**
+     * Index of the first element in the tail: the trie holds whole leaves only.
+     */
+    private int tailOffset() {
+        return count < WIDTH ? 0 : ((count - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leafFor(int i) {
+        if (i >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(i >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private PersistentVector<E> withElement(int i, E e) {
+        if (i >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[i & MASK] = e;
+            return new PersistentVector<>(count, shift, root, newTail, start, end);
+        }
+        return new PersistentVector<>(count, shift, assoc(shift, root, i, e), tail, start, end);
+    }
+
+    private static Object[] assoc(int level, Object[] node, int i, Object e) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[i & MASK] = e;
+        } else {
+            int slot = (i >>> level) & MASK;
+            copy[slot] = assoc(level - BITS, (Object[]) node[slot], i, e);
+        }
+        return copy;
+    }
+
+    /**
+     * Moves the full tail into the trie, adding a level when the trie is full. The
+     * returned vector has an empty tail and is only used for its root and shift.
+     */
+    private PersistentVector<E> pushTail() {
+        Object[] newRoot;
+        int newShift = shift;
+        if ((count >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(count, newShift, newRoot, null, start, end);
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+        Object[] copy = parent.clone();
+        int slot = ((count - 1) >>> level) & MASK;
+        if (level == BITS) {
+            copy[slot] = leaf;
+        } else {
+            Object[] child = (Object[]) parent[slot];
+            copy[slot] = child != null ? pushTail(level - BITS, child, leaf) : newPath(level - BITS, leaf);
+        }
+        return copy;
+    }
+
+    private static Object[] newPath(int level, Object[] leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        Object[] node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+
+    /**
+     * Builds a vector one element at a time without copying a path per element:
+     * elements are collected into a leaf of 32, and each full leaf is moved into the
+     * trie in one step. A builder is not thread-safe; the vectors it builds are.
+     */
+    public static final class Builder<E>
+    {
+        private PersistentVector<E> vector = empty();
+        private Object[] leaf = new Object[WIDTH];
+        private int filled;
+
+        public Builder<E> add(E e) {
+            leaf[filled++] = e;
+            if (filled == WIDTH) {
+                vector = vector.plusPartialLeaf(leaf);
+                leaf = new Object[WIDTH];
+                filled = 0;
+            }
+            return this;
+        }
+
+        public Builder<E> addAll(Iterable<? extends E> elements) {
+            for (E e : elements) {
+                add(e);
+            }
+            return this;
+        }
+
+        /**
+         * @return A vector of everything added so far; the builder can go on adding
+         */
+        public PersistentVector<E> build() {
+            if (filled == 0) {
+                return vector;
+            }
+            return vector.plusPartialLeaf(Arrays.copyOf(leaf, filled));
+        }
+    }
+
+    /**
+     * Appends up to 32 elements as the new tail of a vector whose size is a multiple of 32.
+     */
+    private PersistentVector<E> plusPartialLeaf(Object[] leaf) {
+        if (count == 0) {
+            return new PersistentVector<>(leaf.length, shift, root, leaf, 0, leaf.length);
+        }
+        PersistentVector<E> pushed = pushTail();
+        return new PersistentVector<>(count + leaf.length, pushed.shift, pushed.root, leaf, 0, count + leaf.length);
+    }
+
+    /**
+     * Serializes the elements the vector shows rather than the trie, which a slice shares
+     * with a possibly much larger vector. The copy read back is rebuilt with a Builder.
+     */
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("PersistentVector is read through its SerializedForm");
+    }
+
+    private static final class SerializedForm implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private transient PersistentVector<?> vector;
+
+        SerializedForm(PersistentVector<?> vector)
+        {
+            this.vector = vector;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(vector.size());
+            for (Object e : vector) {
+                out.writeObject(e);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int size = in.readInt();
+            if (size < 0) {
+                throw new InvalidObjectException("Negative size " + size);
+            }
+            Builder<Object> builder = builder();
+            for (int i = 0; i < size; i++) {
+                builder.add(in.readObject());
+            }
+            vector = builder.build();
+        }
+
+        // an empty builder hands back the shared empty instance
+        private Object readResolve() {
+            return vector;
+        }
+    }
+}
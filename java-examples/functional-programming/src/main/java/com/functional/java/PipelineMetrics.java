@@ -0,0 +1,175 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage counters of an instrumented SuperIterable pipeline, and the registry
+ * that holds them by pipeline name. See SuperIterable.instrumented.
+ *
+ * Counters add up over every run of the pipeline and every split of a parallel run.
+ * Running stages flush them every 1024 elements and when they end, so a long run can
+ * be watched while it is going.
+ */
+public final class PipelineMetrics
+{
+    private static final ConcurrentMap<String, PipelineMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final List<StageMetrics> stages = new ArrayList<>();
+
+    private PipelineMetrics(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Returns the metrics registered under a name, registering them on first use.
+     */
+    public static PipelineMetrics named(String name) {
+        return REGISTRY.computeIfAbsent(name, PipelineMetrics::new);
+    }
+
+    /**
+     * Returns a live, read-only view of all registered pipelines by name.
+     */
+    public static Map<String, PipelineMetrics> registry() {
+        return Collections.unmodifiableMap(REGISTRY);
+    }
+
+    /**
+     * Drops a pipeline from the registry. Pipelines built before keep counting into
+     * the dropped metrics; named starts afresh.
+     */
+    public static void unregister(String name) {
+        REGISTRY.remove(name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return The stages recorded so far, ordered by their position in the pipeline
+     */
+    public synchronized List<StageMetrics> stages() {
+        List<StageMetrics> ordered = new ArrayList<>(stages);
+        ordered.sort((a, b) -> Integer.compare(a.position, b.position));
+        return ordered;
+    }
+
+    /**
+     * Finds or adds the counters of a stage. Pipelines built from one instrumented
+     * SuperIterable may branch, so a stage is identified by position and name.
+     */
+    synchronized StageMetrics stage(int position, String stageName) {
+        StageMetrics found = find(position, stageName);
+        if (found == null) {
+            found = new StageMetrics(this.name, position, stageName);
+            stages.add(found);
+        }
+        return found;
+    }
+
+    synchronized StageMetrics find(int position, String stageName) {
+        for (StageMetrics stage : stages) {
+            if (stage.position == position && stage.name.equals(stageName)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("pipeline '").append(name).append('\'');
+        for (StageMetrics stage : stages()) {
+            sb.append(System.lineSeparator()).append("  ").append(stage);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The counters of one stage. Time and allocation are the stage's own: whatever the
+     * stages after it spent on the elements it passed on is subtracted.
+     */
+    public static final class StageMetrics
+    {
+        private final String pipeline;
+        private final int position;
+        private final String name;
+        private final LongAdder elementsIn = new LongAdder();
+        private final LongAdder elementsOut = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        private StageMetrics(String pipeline, int position, String name)
+        {
+            this.pipeline = pipeline;
+            this.position = position;
+            this.name = name;
+        }
+
+        void add(long in, long out, long time, long bytes) {
+            elementsIn.add(in);
+            elementsOut.add(out);
+            nanos.add(time);
+            allocatedBytes.add(bytes);
+        }
+
+        String pipeline() {
+            return pipeline;
+        }
+
+        public int position() {
+            return position;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long elementsIn() {
+            return elementsIn.sum();
+        }
+
+        public long elementsOut() {
+            return elementsOut.sum();
+        }
+
+        /**
+         * @return elementsOut / elementsIn, e.g. 0.1 for a filter passing one element in ten,
+         *         or NaN before any element came in
+         */
+        public double selectivity() {
+            long in = elementsIn();
+            return in == 0 ? Double.NaN : (double) elementsOut() / in;
+        }
+
+        /**
+         * @return Nanoseconds spent in this stage's own code, including the user function
+         */
+        public long nanos() {
+            return nanos.sum();
+        }
+
+        /**
+         * @return Bytes allocated by this stage's own code, or 0 if the JVM cannot measure
+         *         allocation per thread
+         */
+        public long allocatedBytes() {
+            return allocatedBytes.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %-12s in=%,d out=%,d selectivity=%.1f%% time=%.3f ms allocated=%,d B",
+                position, name, elementsIn(), elementsOut(), selectivity() * 100, nanos() / 1e6, allocatedBytes());
+        }
+    }
+}
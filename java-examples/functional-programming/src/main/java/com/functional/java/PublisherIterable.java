@@ -0,0 +1,176 @@
+package com.functional.java;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Adapts a Flow.Publisher to the pull-based Iterable a SuperIterable reads from.
+ * See SuperIterable.fromPublisher.
+ *
+ * Every iterator subscribes once. Items land in a bounded SpscRingBuffer: the publisher
+ * calls onNext from one thread at a time, as the Flow rules require, and only the iterating
+ * thread takes items out. The subscriber never requests more than the buffer has room for,
+ * so a fast publisher is held back by demand instead of filling the heap. It asks for more
+ * in batches of half the buffer as the consumer catches up.
+ *
+ * @param <T> The type of items published
+ */
+final class PublisherIterable<T> implements Iterable<T>
+{
+    private final Flow.Publisher<? extends T> publisher;
+    private final int bufferSize;
+
+    PublisherIterable(Flow.Publisher<? extends T> publisher, int bufferSize)
+    {
+        this.publisher = Objects.requireNonNull(publisher);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Iterator<T> iterator()
+    {
+        SubscriberIterator<T> iterator = new SubscriberIterator<>(bufferSize);
+        publisher.subscribe(iterator);
+        return iterator;
+    }
+
+    /**
+     * The subscriber and the iterator over what it received. It is AutoCloseable so that a
+     * run which stops early, e.g. after limit, cancels the subscription.
+     */
+    private static final class SubscriberIterator<T> implements Flow.Subscriber<T>, Iterator<T>, AutoCloseable
+    {
+        private final SpscRingBuffer<T> buffer;
+        private final int bufferSize;
+        private final int requestBatch;
+        private volatile Flow.Subscription subscription;
+        private volatile boolean done;
+        private volatile Throwable error;
+        private volatile Thread waiter;
+        private T next;
+        private int consumedSinceRequest;
+
+        SubscriberIterator(int bufferSize)
+        {
+            // the ring may round its capacity up; demand stays within bufferSize
+            this.buffer = new SpscRingBuffer<>(bufferSize);
+            this.bufferSize = bufferSize;
+            this.requestBatch = Math.max(1, bufferSize / 2);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s)
+        {
+            if (subscription != null) {
+                s.cancel();
+                return;
+            }
+            subscription = s;
+            // close() may have run before an asynchronous publisher got here; it could not cancel then
+            if (done) {
+                s.cancel();
+                return;
+            }
+            s.request(bufferSize);
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            Objects.requireNonNull(item);
+            if (!buffer.offer(item)) {
+                error = new IllegalStateException("Publisher sent more items than were requested");
+                done = true;
+                subscription.cancel();
+            }
+            wake();
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            error = Objects.requireNonNull(throwable);
+            done = true;
+            wake();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            done = true;
+            wake();
+        }
+
+        private void wake() {
+            Thread w = waiter;
+            if (w != null) {
+                LockSupport.unpark(w);
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (next == null) {
+                next = buffer.poll();
+                if (next != null) {
+                    if (++consumedSinceRequest == requestBatch) {
+                        consumedSinceRequest = 0;
+                        subscription.request(requestBatch);
+                    }
+                    return true;
+                }
+                if (done) {
+                    // items sent before the terminal signal may still be in the buffer
+                    next = buffer.poll();
+                    if (next != null) {
+                        return true;
+                    }
+                    Throwable failure = error;
+                    if (failure == null) {
+                        return false;
+                    }
+                    throw failure instanceof RuntimeException ? (RuntimeException) failure : new CompletionException(failure);
+                }
+                waiter = Thread.currentThread();
+                if (buffer.isEmpty() && !done) {
+                    LockSupport.park(this);
+                }
+                waiter = null;
+                if (Thread.interrupted()) {
+                    close();
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(new InterruptedException("Interrupted while waiting for the publisher"));
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public T next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T item = next;
+            next = null;
+            return item;
+        }
+
+        @Override
+        public void close()
+        {
+            if (!done) {
+                done = true;
+                Flow.Subscription s = subscription;
+                if (s != null) {
+                    s.cancel();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.functional.java;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Approximate quantiles (median, p95, ...) of a stream of doubles in bounded memory,
+ * using the KLL sketch of Karnin, Lang and Liberty.
+ *
+ * Values go into level 0. When the sketch holds more values than its capacity, the lowest
+ * full level is sorted and every other value (starting at a random one of the first two)
+ * moves up a level, where it stands for two values. Higher levels get more room than lower
+ * ones, so memory stays around 3k values however many are added, and the rank error of a
+ * quantile is about 1.7 / k of the count (about 1% for the default k = 200).
+ *
+ * Sketches merge level by level, so they work with the 3-argument collect and parallel
+ * streams:
+ *
+ *   QuantileSketch gas = cars.parallelStream()
+ *       .mapToDouble(Car::getGasLevel)
+ *       .collect(QuantileSketch::new, QuantileSketch::accept, QuantileSketch::merge);
+ *   double median = gas.quantile(0.5);
+ *
+ * NaN values are ignored. The minimum and maximum are tracked exactly.
+ */
+public class QuantileSketch implements DoubleConsumer
+{
+    private static final int DEFAULT_K = 200;
+    private static final double LEVEL_RATIO = 2.0 / 3.0;
+
+    private final int k;
+    private double[][] levels = new double[1][8];
+    private int[] sizes = new int[1];
+    private int retained;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public QuantileSketch()
+    {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k The accuracy parameter: larger is more accurate and uses more memory
+     */
+    public QuantileSketch(int k)
+    {
+        if (k < 8) {
+            throw new IllegalArgumentException("k must be at least 8: " + k);
+        }
+        this.k = k;
+    }
+
+    @Override
+    public void accept(double value)
+    {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        min = count == 1 ? value : Math.min(min, value);
+        max = count == 1 ? value : Math.max(max, value);
+        append(0, value);
+        retained++;
+        compress();
+    }
+
+    /**
+     * Adds the values seen by another sketch. Both sketches must use the same k.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("Cannot merge sketches with k " + k + " and " + other.k);
+        }
+        if (other.count == 0) {
+            return;
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        for (int level = 0; level < other.sizes.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+            retained += other.sizes[level];
+        }
+        compress();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns an approximation of the value below which a fraction q of the values lie.
+     *
+     * @param q A fraction between 0 and 1, e.g. 0.5 for the median
+     * @return The estimated quantile, or NaN when the sketch is empty
+     */
+    public double quantile(double q) {
+        if (!(q >= 0.0 && q <= 1.0)) {
+            throw new IllegalArgumentException("q must be between 0 and 1: " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (q == 0.0) {
+            return min;
+        }
+        if (q == 1.0) {
+            return max;
+        }
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+        for (int level = 0; level < sizes.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                weights[n++] = 1L << level;
+            }
+        }
+        int[] order = KeySort.sortedIndices(values);
+        long totalWeight = 0;
+        for (long weight : weights) {
+            totalWeight += weight;
+        }
+        double target = q * totalWeight;
+        long cumulative = 0;
+        for (int index : order) {
+            cumulative += weights[index];
+            if (cumulative >= target) {
+                return values[index];
+            }
+        }
+        return max;
+    }
+
+    private void append(int level, double value) {
+        if (level == sizes.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            levels[level] = new double[8];
+            sizes = Arrays.copyOf(sizes, level + 1);
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], sizes[level] * 2);
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    private int capacity(int level) {
+        int depth = sizes.length - 1 - level;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(LEVEL_RATIO, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int level = 0; level < sizes.length; level++) {
+            total += capacity(level);
+        }
+        return total;
+    }
+
+    private void compress() {
+        while (retained > totalCapacity()) {
+            int level = 0;
+            while (sizes[level] < capacity(level)) {
+                level++;
+            }
+            compact(level);
+        }
+    }
+
+    /**
+     * Moves every other value of a level up to the next one. With an odd number of values,
+     * one is left behind so that no weight is lost.
+     */
+    private void compact(int level) {
+        double[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        int keep = size % 2;
+        int offset = keep + (ThreadLocalRandom.current().nextBoolean() ? 1 : 0);
+        int promoted = 0;
+        for (int i = offset; i < size; i += 2) {
+            append(level + 1, values[i]);
+            promoted++;
+        }
+        sizes[level] = keep;
+        retained -= size - keep - promoted;
+    }
+}
@@ -0,0 +1,120 @@
+package com.functional.java;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Count, sum, min, max, mean and variance of a stream of doubles, in one pass and constant
+ * memory. Like CollectExample's WordStats, it plugs into the 3-argument collect:
+ *
+ *   RunningStats gas = cars.parallelStream()
+ *       .mapToDouble(Car::getGasLevel)
+ *       .collect(RunningStats::new, RunningStats::accept, RunningStats::merge);
+ *
+ * Mean and variance use Welford's update, and two partial results are combined with the
+ * pairwise formula of Chan et al., so neither loses precision the way summing x and x * x
+ * does. The count is a long and the sum is compensated, so nothing overflows or drifts.
+ * An empty RunningStats follows DoubleSummaryStatistics: min is +Infinity, max is
+ * -Infinity and the mean is 0.
+ */
+public class RunningStats implements DoubleConsumer
+{
+    private long count;
+    private double mean;
+    // sum of squared differences from the current mean
+    private double m2;
+    private double sum;
+    private double sumCompensation;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    @Override
+    public void accept(double value)
+    {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        addToSum(value);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values seen by another RunningStats, as if they had been accepted here.
+     */
+    public void merge(RunningStats other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            sum = other.sum;
+            sumCompensation = other.sumCompensation;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        addToSum(other.sum);
+        addToSum(-other.sumCompensation);
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    private void addToSum(double value) {
+        double y = value - sumCompensation;
+        double t = sum + y;
+        sumCompensation = (t - sum) - y;
+        sum = t;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The sample variance (divided by count - 1), or NaN for fewer than 2 values
+     */
+    public double getVariance() {
+        return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    /**
+     * @return The population variance (divided by count), or NaN when empty
+     */
+    public double getPopulationVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public String toString() {
+        return "RunningStats{count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max
+            + ", mean=" + mean + ", stddev=" + getStandardDeviation() + "}";
+    }
+}
@@ -0,0 +1,63 @@
+package com.functional.java;
+
+import java.util.function.Consumer;
+
+/**
+ * A push-style receiver of pipeline elements.
+ * Each stage of a SuperIterable wraps the sink of the stage after it, so a whole
+ * filter/map/flatMap chain collapses into one nested call per source element.
+ *
+ * @param <T> The type of elements accepted by this sink
+ */
+interface Sink<T> extends Consumer<T>
+{
+
+    /**
+     * Tells the producer that this sink will ignore any further elements, so it can
+     * stop pulling from the source. Short-circuiting stages such as limit and
+     * takeWhile, and terminal operations such as findFirst, override this.
+     *
+     * @return true once no more elements are wanted
+     */
+    default boolean cancellationRequested()
+    {
+        return false;
+    }
+
+    /**
+     * Tells the sink that no more elements will come, because the source is exhausted
+     * or the run was cancelled. Stages that hold elements back, such as mapAsync,
+     * push them downstream here before passing the signal on.
+     */
+    default void end()
+    {
+    }
+
+    /**
+     * Base class for a sink that forwards (some of) its results to a downstream sink.
+     *
+     * @param <T> The type of elements accepted by this sink
+     * @param <U> The type of elements passed downstream
+     */
+    abstract class Chained<T, U> implements Sink<T>
+    {
+        protected final Sink<? super U> downstream;
+
+        protected Chained(Sink<? super U> downstream)
+        {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public boolean cancellationRequested()
+        {
+            return downstream.cancellationRequested();
+        }
+
+        @Override
+        public void end()
+        {
+            downstream.end();
+        }
+    }
+}
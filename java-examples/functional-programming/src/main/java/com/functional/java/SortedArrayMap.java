@@ -0,0 +1,220 @@
+package com.functional.java;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A read-only map whose iteration order is a sort order chosen when it is built,
+ * used as the result of MoreCollectors.toSortedMap and sortedByValue.
+ *
+ * Keys and values sit in two arrays in sorted order. Lookups go through an open-addressing
+ * table of int positions into those arrays, so unlike a LinkedHashMap there is no node
+ * object per entry and no second copy of the entries.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+final class SortedArrayMap<K, V> extends AbstractMap<K, V>
+{
+    private final Object[] keys;
+    private final Object[] values;
+    // position + 1 of the key hashed to each slot, 0 for an empty slot
+    private final int[] table;
+
+    /**
+     * Sorts the first size entries of the array and copies them into the map.
+     *
+     * @throws IllegalStateException if two entries have equal keys, as Collectors.toMap does
+     */
+    SortedArrayMap(Entry<K, V>[] entries, int size, Comparator<? super Entry<K, V>> order)
+    {
+        Arrays.sort(entries, 0, size, order);
+        keys = new Object[size];
+        values = new Object[size];
+        table = new int[tableSize(size)];
+        for (int i = 0; i < size; i++) {
+            K key = entries[i].getKey();
+            if (find(key) >= 0) {
+                throw new IllegalStateException("Duplicate key " + key);
+            }
+            keys[i] = key;
+            values[i] = entries[i].getValue();
+            table[slotFor(key)] = i + 1;
+        }
+    }
+
+    private static int tableSize(int size) {
+        // at most half full, so probe sequences stay short
+        return Integer.highestOneBit(Math.max(1, size) * 2 - 1) * 2;
+    }
+
+    private int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    /**
+     * @return The slot holding the key, or the empty slot where it would go
+     */
+    private int slotFor(Object key) {
+        int slot = hash(key);
+        while (table[slot] != 0 && !Objects.equals(keys[table[slot] - 1], key)) {
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return slot;
+    }
+
+    /**
+     * @return The position of the key in sort order, or -1
+     */
+    private int find(Object key) {
+        return table[slotFor(key)] - 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int position = find(key);
+        return position < 0 ? null : (V) values[position];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<Entry<K, V>>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Entry<K, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next++;
+                        return new SimpleImmutableEntry<>((K) keys[i], (V) values[i]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    /**
+     * Collects entries for a SortedArrayMap: all of them, or with a limit only the best
+     * ones seen so far, in a heap whose root is the worst entry kept.
+     */
+    static final class Builder<K, V>
+    {
+        private final Comparator<? super Entry<K, V>> order;
+        private final int limit;
+        private Entry<K, V>[] entries;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        Builder(Comparator<? super Entry<K, V>> order, int limit)
+        {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit must not be negative: " + limit);
+            }
+            this.order = order;
+            this.limit = limit;
+            this.entries = (Entry<K, V>[]) new Entry<?, ?>[Math.min(limit, 16)];
+        }
+
+        void add(K key, V value) {
+            add(new SimpleImmutableEntry<>(key, value));
+        }
+
+        void add(Entry<K, V> entry) {
+            if (size < limit) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, (int) Math.min(limit, size * 2L));
+                }
+                entries[size] = entry;
+                siftUp(size++);
+            } else if (size > 0 && order.compare(entry, entries[0]) < 0) {
+                entries[0] = entry;
+                siftDown(0);
+            }
+        }
+
+        Builder<K, V> addAll(Builder<K, V> other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.entries[i]);
+            }
+            return this;
+        }
+
+        SortedArrayMap<K, V> build() {
+            return new SortedArrayMap<>(entries, size, order);
+        }
+
+        private void siftUp(int i) {
+            if (limit == Integer.MAX_VALUE) {
+                // unlimited: every entry is kept, so the heap order is never needed
+                return;
+            }
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (order.compare(entries[i], entries[parent]) <= 0) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && order.compare(entries[left], entries[worst]) > 0) {
+                    worst = left;
+                }
+                if (right < size && order.compare(entries[right], entries[worst]) > 0) {
+                    worst = right;
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            Entry<K, V> entry = entries[a];
+            entries[a] = entries[b];
+            entries[b] = entry;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.functional.java;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * Each side only ever writes its own counter, so offer and poll need no locks and no
+ * compare-and-set: the producer publishes a slot by advancing tail after filling it,
+ * the consumer frees it by advancing head after emptying it.
+ *
+ * @param <E> The type of elements queued
+ */
+final class SpscRingBuffer<E>
+{
+    private final Object[] slots;
+    private final int mask;
+    // next slot to read; written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // next slot to write; written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+
+    SpscRingBuffer(int capacity)
+    {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity * 2 - 1);
+        this.slots = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return false if the buffer is full
+     */
+    boolean offer(E e) {
+        long t = tail.get();
+        if (t - head.get() == slots.length) {
+            return false;
+        }
+        slots[(int) t & mask] = e;
+        // a full volatile write, so a consumer about to park either sees the element or gets unparked
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return The oldest element, or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int slot = (int) h & mask;
+        E e = (E) slots[slot];
+        slots[slot] = null;
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
@@ -0,0 +1,29 @@
+package com.functional.java;
+
+/**
+ * One deferred step of a SuperIterable pipeline.
+ * A stage does no work on its own: it only knows how to put itself in front of
+ * the sink of the next stage. Stages are wrapped again for every terminal
+ * operation, so a stage may keep per-run state inside the sink it creates.
+ *
+ * @param <I> The type of elements entering the stage
+ * @param <O> The type of elements leaving the stage
+ */
+interface Stage<I, O>
+{
+    Stage<Object, Object> IDENTITY = downstream -> downstream;
+
+    Sink<I> wrap(Sink<? super O> downstream);
+
+    /**
+     * Fuses this stage with the one after it.
+     *
+     * @param next The stage that consumes the output of this one
+     * @param <R> The type of elements leaving the fused stage
+     * @return A single stage running both steps per element
+     */
+    default <R> Stage<I, R> then(Stage<O, R> next)
+    {
+        return downstream -> wrap(next.wrap(downstream));
+    }
+}
@@ -1,75 +1,1528 @@
 package com.functional.java;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * A lazy, chainable view over an Iterable.
+ * filter, map and flatMap only record a stage; nothing runs until a terminal
+ * operation such as forEvery or iterator() pulls from the source. At that point
+ * all recorded stages are fused into one sink, so a filter().filter().map() chain
+ * walks the source once with one iterator and builds no intermediate lists.
+ * Because evaluation is deferred, every terminal operation sees the source as it
+ * is at that moment; call materialize() to take an eager snapshot instead.
+ * Short-circuiting operations (findFirst, anyMatch, limit, takeWhile, ...) stop
+ * pulling from the source as soon as their answer is decided, so they also work
+ * on very large or unbounded sources.
+ * After parallel() the forEvery, match and materialize operations split the source
+ * with its Spliterator and run the fused stages on a ForkJoinPool; see parallel().
+ *
+ * @param <E> The type of elements produced by this SuperIterable
+ */
 public class SuperIterable<E> implements Iterable<E>
 {
 
-    private Iterable<E> self;
+    // leaf size for sources that cannot report their size, e.g. a plain Iterable
+    private static final long UNKNOWN_SIZE_SPLIT = 1024;
+
+    // characteristics that describe how the source may change, which no stage affects
+    private static final int SOURCE_ONLY = Spliterator.IMMUTABLE | Spliterator.CONCURRENT;
+    // kept by stages that emit exactly one element per element, like map
+    private static final int ONE_TO_ONE = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+    // kept by stages that pass on some of their elements unchanged, like filter
+    private static final int SUBSET = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
+    // kept by stages that group elements into new lists, like batch
+    private static final int BATCHES = Spliterator.ORDERED | Spliterator.NONNULL;
+
+    private final Iterable<?> self;
+    private final Stage<Object, E> stages;
+    // true once a stage keeps state across elements (limit, takeWhile, ...);
+    // such a pipeline cannot be split and always runs sequentially
+    private final boolean stateful;
+    // null means sequential
+    private final ForkJoinPool pool;
+    private final boolean ordered;
+    // names of the stages, for explain()
+    private final List<String> names;
+    // null unless instrumented
+    private final PipelineMetrics metrics;
+    // the Spliterator characteristics of the source that still hold after all stages
+    private final int keeps;
+
+    @SuppressWarnings("unchecked")
     public SuperIterable(Iterable<E> self)
     {
-        this.self = self;
+        this(self, (Stage<Object, E>) (Stage<?, ?>) Stage.IDENTITY, false, null, true, List.of(), null, ~0);
+    }
+
+    private SuperIterable(Iterable<?> self, Stage<Object, E> stages, boolean stateful, ForkJoinPool pool, boolean ordered,
+                          List<String> names, PipelineMetrics metrics, int keeps)
+    {
+        this.self = self;
+        this.stages = stages;
+        this.stateful = stateful;
+        this.pool = pool;
+        this.ordered = ordered;
+        this.names = names;
+        this.metrics = metrics;
+        this.keeps = keeps;
+    }
+
+    /**
+     * Reads the items of a Flow.Publisher, e.g. a SubmissionPublisher or a reactive driver,
+     * so the same filter, map, batch, ... stages run over a push stream.
+     *
+     * Every iteration subscribes anew and buffers at most bufferSize items: the subscriber
+     * only ever requests as many as the buffer has room for, and asks for more in batches
+     * of half the buffer as the pipeline consumes them. A fast publisher is slowed down by
+     * that demand instead of piling items up in memory. The pipeline's thread blocks while
+     * the buffer is empty. When a run stops early, e.g. after limit or findFirst, the
+     * subscription is cancelled. An onError ends the run by throwing the publisher's
+     * RuntimeException as it is, anything else wrapped in a CompletionException.
+     *
+     * @param publisher The publisher to subscribe to on every iteration
+     * @param bufferSize The most items requested but not yet consumed
+     * @param <T> The type of items published
+     * @return A SuperIterable over the published items
+     */
+    public static <T> SuperIterable<T> fromPublisher(Flow.Publisher<? extends T> publisher, int bufferSize)
+    {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        return new SuperIterable<>(new PublisherIterable<T>(publisher, bufferSize));
+    }
+
+    private <U> SuperIterable<U> then(String name, int stageKeeps, Stage<E, U> next)
+    {
+        return append(name, stageKeeps, next, stateful);
+    }
+
+    private <U> SuperIterable<U> thenStateful(String name, int stageKeeps, Stage<E, U> next)
+    {
+        return append(name, stageKeeps, next, true);
+    }
+
+    /**
+     * @param stageKeeps The Spliterator characteristics that still hold after the stage if
+     *                   they held before it, e.g. a filter keeps ORDERED and DISTINCT but not SIZED
+     */
+    private <U> SuperIterable<U> append(String name, int stageKeeps, Stage<E, U> next, boolean stateful)
+    {
+        Stage<E, U> stage = metrics == null ? next : InstrumentedStage.of(next, metrics.stage(names.size(), name));
+        List<String> trail = new ArrayList<>(names);
+        trail.add(name);
+        return new SuperIterable<>(self, stages.then(stage), stateful, pool, ordered, List.copyOf(trail), metrics,
+            keeps & (stageKeeps | SOURCE_ONLY));
+    }
+
+    /**
+     * Measures every stage added after this call: elements in and out, selectivity, and
+     * the time and bytes each stage spends on its own, user functions included.
+     * The counters are registered as PipelineMetrics under the given name, are shown
+     * by explain(), and are also recorded as com.functional.java.PipelineStage JFR events.
+     *
+     * Measuring costs a few clock reads per element and stage, so it is opt-in: the stages
+     * of a pipeline that is not instrumented are not wrapped at all. Stages added before
+     * this call are not measured, so call it right on the source.
+     *
+     * @param name The name to register the metrics under; pipelines with the same name
+     *             add up into the same metrics
+     * @return A SuperIterable whose further stages are instrumented
+     */
+    public SuperIterable<E> instrumented(String name) {
+        return new SuperIterable<>(self, stages, stateful, pool, ordered, names, PipelineMetrics.named(name), keeps);
+    }
+
+    /**
+     * Describes the pipeline: its source, execution mode and stages in order, with their
+     * counters so far when the pipeline is instrumented. Nothing is run.
+     *
+     * @return A multi-line description
+     */
+    public String explain() {
+        StringBuilder sb = new StringBuilder("SuperIterable over ").append(self.getClass().getSimpleName());
+        sb.append(pool == null ? ", sequential" : runsInParallel() ? ", parallel" : ", sequential (stateful stage)");
+        if (pool != null && !ordered) {
+            sb.append(", unordered");
+        }
+        if (metrics != null) {
+            sb.append(", instrumented as '").append(metrics.name()).append('\'');
+        }
+        for (int i = 0; i < names.size(); i++) {
+            PipelineMetrics.StageMetrics stage = metrics == null ? null : metrics.find(i, names.get(i));
+            sb.append(System.lineSeparator()).append("  ").append(stage != null ? stage : i + " " + names.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Switches the terminal operations of this pipeline to parallel execution on the common ForkJoinPool.
+     *
+     * @return A parallel SuperIterable with the same stages
+     * @see #parallel(ForkJoinPool)
+     */
+    public SuperIterable<E> parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Switches the terminal operations of this pipeline to parallel execution on the given pool.
+     * The source is split with its Spliterator, so list- and array-backed sources split
+     * evenly while a plain Iterable is cut into growing batches. Each split runs its own
+     * copy of the fused stages, so filter, map and flatMap functions must be thread-safe.
+     * By default results keep encounter order; see unordered().
+     * Pipelines containing limit, takeWhile or dropWhile, and findFirst and iterator(),
+     * still run sequentially because their answer depends on the position of each element.
+     *
+     * @param pool The pool that runs the split tasks
+     * @return A parallel SuperIterable with the same stages
+     */
+    public SuperIterable<E> parallel(ForkJoinPool pool) {
+        return new SuperIterable<>(self, stages, stateful, Objects.requireNonNull(pool), ordered, names, metrics, keeps);
+    }
+
+    /**
+     * Switches the terminal operations of this pipeline back to a single thread.
+     *
+     * @return A sequential SuperIterable with the same stages
+     */
+    public SuperIterable<E> sequential() {
+        return new SuperIterable<>(self, stages, stateful, null, ordered, names, metrics, keeps);
+    }
+
+    /**
+     * Drops the encounter-order guarantee of a parallel forEvery.
+     * An ordered parallel forEvery buffers each split and replays the buffers in order
+     * on the calling thread; an unordered one hands elements to the consumer directly
+     * from the worker threads, so the consumer must be thread-safe.
+     *
+     * @return A SuperIterable with the same stages and no ordering constraint
+     */
+    public SuperIterable<E> unordered() {
+        return new SuperIterable<>(self, stages, stateful, pool, false, names, metrics, keeps);
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    public SuperIterable<E> filter(Predicate<E> pred) {
+        return then("filter", SUBSET, downstream -> new Sink.Chained<E, E>(downstream) {
+            @Override
+            public void accept(E e) {
+                if (pred.test(e)) {
+                    downstream.accept(e);
+                }
+            }
+        });
+    }
+
+    public void forEvery(Consumer<E> cons) {
+        if (!runsInParallel()) {
+            run(cons::accept);
+        } else if (ordered) {
+            for (List<E> chunk : this.<List<E>>runParallel(ArrayList::new, chunk -> chunk::add)) {
+                chunk.forEach(cons);
+            }
+        } else {
+            runParallel(() -> cons, c -> c::accept);
+        }
+    }
+
+    private boolean runsInParallel() {
+        return pool != null && !stateful;
+    }
+
+    /**
+     * Splits the source and runs the fused stages on every split in the pool.
+     *
+     * @param newResult Creates the per-split result, e.g. a buffer
+     * @param sinkInto Creates the terminal sink that feeds a per-split result
+     * @param <R> The type of the per-split result
+     * @return The result of every split in encounter order
+     */
+    private <R> List<R> runParallel(Supplier<R> newResult, Function<R, Sink<? super E>> sinkInto) {
+        Spliterator<?> split = sourceSpliterator();
+        try {
+            long size = split.estimateSize();
+            long threshold = size == Long.MAX_VALUE ? UNKNOWN_SIZE_SPLIT : Math.max(1, size / (4L * pool.getParallelism()));
+            return pool.invoke(new SplitTask<>(split, stages, newResult, sinkInto, threshold));
+        } finally {
+            close(split);
+        }
+    }
+
+    /**
+     * Pushes source elements through the fused stages into a terminal sink,
+     * checking before every pull whether the chain still wants more.
+     */
+    private void run(Sink<? super E> terminal) {
+        Sink<Object> sink = stages.wrap(terminal);
+        Iterator<?> source = self.iterator();
+        try {
+            while (!sink.cancellationRequested() && source.hasNext()) {
+                sink.accept(source.next());
+            }
+            sink.end();
+        } finally {
+            close(source);
+        }
+    }
+
+    /**
+     * Releases a source iterator or spliterator that holds on to something, like the open file
+     * of a CarReader or the subscription of fromPublisher, once a run stops pulling from it.
+     * This matters when the run stops early, e.g. after limit or findFirst.
+     */
+    private static void close(Object source) {
+        if (source instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) source).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not close the source", e);
+            }
+        }
+    }
+
+    public <U> SuperIterable<U> map(Function<E, U> mapper) {
+        return then("map", ONE_TO_ONE, downstream -> new Sink.Chained<E, U>(downstream) {
+            @Override
+            public void accept(E e) {
+                downstream.accept(mapper.apply(e));
+            }
+        });
+    }
+
+    /**
+     * Like map, but runs up to maxConcurrency calls of the mapper at once, each on its own
+     * virtual thread, and keeps encounter order. See mapAsync(Function, int, boolean, Duration).
+     */
+    public <U> SuperIterable<U> mapAsync(Function<E, U> mapper, int maxConcurrency) {
+        return mapAsync(mapper, maxConcurrency, true, null);
+    }
+
+    /**
+     * Maps elements concurrently, for mappers that mostly wait on I/O such as a database or
+     * HTTP lookup. Each call runs on its own virtual thread, so thousands of slow lookups
+     * overlap without tying up a platform thread each.
+     *
+     * At most maxConcurrency calls are in flight: the pipeline stops pulling from the source
+     * until one completes. With ordered results come out in encounter order, so one slow call
+     * holds back the ones after it; without, they come out as they complete.
+     * If a call throws, or takes longer than the timeout, the calls still in flight are
+     * cancelled and the terminal operation throws: the mapper's RuntimeException or Error as
+     * it is, anything else (including a TimeoutException) wrapped in a CompletionException.
+     *
+     * The in-flight window belongs to the whole pipeline, so this stage always runs
+     * sequentially, like limit; the concurrency comes from the virtual threads instead.
+     *
+     * @param mapper The mapping function; called from virtual threads
+     * @param maxConcurrency The maximum number of calls in flight
+     * @param ordered true to keep encounter order
+     * @param timeout The longest a single call may take, or null for no limit
+     * @param <U> The type of mapped elements
+     * @return A new SuperIterable of the mapped elements
+     */
+    public <U> SuperIterable<U> mapAsync(Function<E, U> mapper, int maxConcurrency, boolean ordered, Duration timeout) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        long timeoutNanos = timeout == null ? Long.MAX_VALUE : timeout.toNanos();
+        return thenStateful("mapAsync(" + maxConcurrency + ")", ordered ? ONE_TO_ONE : ONE_TO_ONE & ~Spliterator.ORDERED,
+            downstream -> new AsyncMapSink<>(downstream, mapper, maxConcurrency, ordered, timeoutNanos));
+    }
+
+    /**
+     * Flattens a nested structure of SuperIterables into a single SuperIterable.
+     * This is useful when the mapping function returns a collection (SuperIterable) for each element,
+     * and we want a single flat list of all results combined.
+     *
+     * @param mapper A function that transforms an element E into a SuperIterable<U>
+     * @param <U> The type of elements in the returned SuperIterable
+     * @return A new SuperIterable containing all elements from the resulting SuperIterables
+     */
+    public <U> SuperIterable<U> flatMap(Function<E, SuperIterable<U>> mapper) {
+        return then("flatMap", Spliterator.ORDERED, downstream -> new Sink.Chained<E, U>(downstream) {
+            @Override
+            public void accept(E e) {
+                SuperIterable<U> innerIterable = mapper.apply(e);
+                // Push each inner element straight on to the next stage,
+                // unless a short-circuiting stage further down is already satisfied
+                Iterator<U> inner = innerIterable.iterator();
+                while (!downstream.cancellationRequested() && inner.hasNext()) {
+                    downstream.accept(inner.next());
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the pipeline and collects one int per element into a primitive buffer.
+     * Use this instead of map when the result is numeric: map(n -> n * 2) boxes every
+     * result into an Integer, while mapToInt(n -> n * 2) writes straight into an int[].
+     *
+     * @param mapper A function that extracts an int from each element
+     * @return An IntSuperIterable holding the extracted values in encounter order
+     */
+    public IntSuperIterable mapToInt(ToIntFunction<E> mapper) {
+        IntSuperIterable results = new IntSuperIterable();
+        if (runsInParallel()) {
+            for (IntSuperIterable chunk : runParallel(IntSuperIterable::new, chunk -> e -> chunk.add(mapper.applyAsInt(e)))) {
+                results.addAll(chunk);
+            }
+        } else {
+            run(e -> results.add(mapper.applyAsInt(e)));
+        }
+        return results;
+    }
+
+    /**
+     * Runs the pipeline and collects one double per element into a primitive buffer,
+     * e.g. mapToDouble(Car::getGasLevel) without boxing every gas level.
+     *
+     * @param mapper A function that extracts a double from each element
+     * @return A DoubleSuperIterable holding the extracted values in encounter order
+     */
+    public DoubleSuperIterable mapToDouble(ToDoubleFunction<E> mapper) {
+        DoubleSuperIterable results = new DoubleSuperIterable();
+        if (runsInParallel()) {
+            for (DoubleSuperIterable chunk : runParallel(DoubleSuperIterable::new, chunk -> e -> chunk.add(mapper.applyAsDouble(e)))) {
+                results.addAll(chunk);
+            }
+        } else {
+            run(e -> results.add(mapper.applyAsDouble(e)));
+        }
+        return results;
+    }
+
+    /**
+     * Truncates the pipeline after at most maxSize elements.
+     * Once the limit is reached no further elements are pulled from the source.
+     *
+     * @param maxSize The number of elements to keep
+     * @return A new SuperIterable of at most maxSize elements
+     */
+    public SuperIterable<E> limit(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative: " + maxSize);
+        }
+        return thenStateful("limit(" + maxSize + ")", SUBSET, downstream -> new Sink.Chained<E, E>(downstream) {
+            private long remaining = maxSize;
+
+            @Override
+            public void accept(E e) {
+                if (remaining > 0) {
+                    remaining--;
+                    downstream.accept(e);
+                }
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return remaining == 0 || downstream.cancellationRequested();
+            }
+        });
+    }
+
+    /**
+     * Keeps elements while the predicate holds and stops at the first one that fails it.
+     *
+     * @param pred The condition every kept element must satisfy
+     * @return A new SuperIterable with the longest matching prefix
+     */
+    public SuperIterable<E> takeWhile(Predicate<E> pred) {
+        return thenStateful("takeWhile", SUBSET, downstream -> new Sink.Chained<E, E>(downstream) {
+            private boolean taking = true;
+
+            @Override
+            public void accept(E e) {
+                if (taking && (taking = pred.test(e))) {
+                    downstream.accept(e);
+                }
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return !taking || downstream.cancellationRequested();
+            }
+        });
+    }
+
+    /**
+     * Skips elements while the predicate holds and keeps everything from the first one that fails it.
+     *
+     * @param pred The condition for elements to skip
+     * @return A new SuperIterable without the longest matching prefix
+     */
+    public SuperIterable<E> dropWhile(Predicate<E> pred) {
+        return thenStateful("dropWhile", SUBSET, downstream -> new Sink.Chained<E, E>(downstream) {
+            private boolean dropping = true;
+
+            @Override
+            public void accept(E e) {
+                if (!dropping || !(dropping = pred.test(e))) {
+                    downstream.accept(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Groups elements into lists of size elements; the last list holds whatever is left.
+     * Each list is new and presized, so downstream stages may keep it.
+     *
+     * @param size The number of elements per batch
+     * @return A new SuperIterable of batches
+     */
+    public SuperIterable<List<E>> batch(int size) {
+        return batch(size, null);
+    }
+
+    /**
+     * Groups elements into lists of at most size elements, also closing a batch once its
+     * first element has waited maxDelay. There is no timer thread: the delay is checked
+     * when the next element arrives, so a batch can wait longer while the source is idle.
+     *
+     * @param size The maximum number of elements per batch
+     * @param maxDelay How long a batch may collect before it is sent on, or null for no limit
+     * @return A new SuperIterable of batches
+     */
+    public SuperIterable<List<E>> batch(int size, Duration maxDelay) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        long maxDelayNanos = maxDelay == null ? Long.MAX_VALUE : maxDelay.toNanos();
+        return thenStateful("batch(" + size + ")", BATCHES, downstream -> new Sink.Chained<E, List<E>>(downstream) {
+            private List<E> batch = new ArrayList<>(size);
+            private long openedAt;
+
+            @Override
+            public void accept(E e) {
+                if (batch.isEmpty() && maxDelayNanos != Long.MAX_VALUE) {
+                    openedAt = System.nanoTime();
+                }
+                batch.add(e);
+                if (batch.size() == size
+                    || (maxDelayNanos != Long.MAX_VALUE && System.nanoTime() - openedAt >= maxDelayNanos)) {
+                    flush();
+                }
+            }
+
+            @Override
+            public void end() {
+                if (!batch.isEmpty() && !downstream.cancellationRequested()) {
+                    flush();
+                }
+                downstream.end();
+            }
+
+            private void flush() {
+                List<E> full = batch;
+                batch = new ArrayList<>(size);
+                downstream.accept(full);
+            }
+        });
+    }
+
+    /**
+     * Slides a window of size elements over the pipeline, moving it step elements at a time:
+     * window(3, 1) gives [1, 2, 3], [2, 3, 4], ...; window(3, 3) gives non-overlapping windows;
+     * with step greater than size the elements between windows are skipped.
+     * Only complete windows are emitted. Each window is a new list.
+     *
+     * @param size The number of elements per window
+     * @param step How many elements the window moves each time
+     * @return A new SuperIterable of windows
+     */
+    public SuperIterable<List<E>> window(int size, int step) {
+        if (size < 1 || step < 1) {
+            throw new IllegalArgumentException("size and step must be positive: " + size + ", " + step);
+        }
+        return thenStateful("window(" + size + ", " + step + ")", BATCHES, downstream -> new Sink.Chained<E, List<E>>(downstream) {
+            private final ArrayDeque<E> window = new ArrayDeque<>(size);
+            private int skip;
+
+            @Override
+            public void accept(E e) {
+                if (skip > 0) {
+                    skip--;
+                    return;
+                }
+                window.add(e);
+                if (window.size() == size) {
+                    downstream.accept(new ArrayList<>(window));
+                    if (step >= size) {
+                        window.clear();
+                        skip = step - size;
+                    } else {
+                        for (int i = 0; i < step; i++) {
+                            window.poll();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the pipeline and hands the results to the consumer size at a time (the last batch
+     * may be smaller), for consumers with a high cost per call such as bulk inserts.
+     * The same presized list is refilled for every batch, so the consumer must not keep it.
+     * On an unordered parallel pipeline each split fills its own batches and the consumer
+     * is called from several threads; otherwise batches arrive in encounter order.
+     *
+     * @param size The maximum number of elements per call
+     * @param cons Receives each batch as a read-only list
+     */
+    public void forEveryBatch(int size, Consumer<List<E>> cons) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        if (runsInParallel() && !ordered) {
+            runParallel(() -> new BatchSink<E>(size, cons), batch -> batch);
+        } else {
+            run(new BatchSink<>(size, cons));
+        }
+    }
+
+    /**
+     * Returns the first element of the pipeline, pulling no further than that element.
+     *
+     * @return The first element, or an empty Optional if there is none
+     * @throws NullPointerException if the first element is null
+     */
+    public Optional<E> findFirst() {
+        FirstSink<E> first = new FirstSink<>();
+        run(first);
+        return first.found ? Optional.of(first.value) : Optional.empty();
+    }
+
+    /**
+     * Checks whether any element matches, stopping at the first match.
+     *
+     * @param pred The condition to look for
+     * @return true if at least one element satisfies the predicate
+     */
+    public boolean anyMatch(Predicate<E> pred) {
+        if (runsInParallel()) {
+            return matchInParallel(pred, true);
+        }
+        MatchSink<E> match = new MatchSink<>(pred, true);
+        run(match);
+        return match.decided;
+    }
+
+    /**
+     * Checks whether every element matches, stopping at the first mismatch.
+     *
+     * @param pred The condition every element must satisfy
+     * @return true if no element fails the predicate (also true when empty)
+     */
+    public boolean allMatch(Predicate<E> pred) {
+        if (runsInParallel()) {
+            return !matchInParallel(pred, false);
+        }
+        MatchSink<E> match = new MatchSink<>(pred, false);
+        run(match);
+        return !match.decided;
+    }
+
+    /**
+     * Checks that no element matches, stopping at the first match.
+     *
+     * @param pred The condition no element may satisfy
+     * @return true if no element satisfies the predicate (also true when empty)
+     */
+    public boolean noneMatch(Predicate<E> pred) {
+        return !anyMatch(pred);
+    }
+
+    /**
+     * Parallel form of MatchSink: all splits share one flag, so the first split to
+     * decide the answer cancels the others.
+     */
+    private boolean matchInParallel(Predicate<E> pred, boolean stopOn) {
+        AtomicBoolean decided = new AtomicBoolean();
+        runParallel(() -> decided, flag -> new Sink<E>() {
+            @Override
+            public void accept(E e) {
+                if (pred.test(e) == stopOn) {
+                    flag.set(true);
+                }
+            }
+
+            @Override
+            public boolean cancellationRequested() {
+                return flag.get();
+            }
+        });
+        return decided.get();
+    }
+
+    /**
+     * Runs the pipeline eagerly and copies its results into a new list.
+     * This is the old behaviour of filter/map/flatMap, kept for callers that want
+     * a snapshot which no longer depends on the source or re-runs the stages.
+     * The snapshot is a PersistentVector, so it can be shared with other threads as is.
+     *
+     * @return A new SuperIterable backed by a vector of the current results
+     */
+    public SuperIterable<E> materialize() {
+        return new SuperIterable<>(toVector());
+    }
+
+    /**
+     * Runs the pipeline eagerly and collects its results, in encounter order, into an
+     * immutable vector. Derived vectors (plus, with, slice) share its storage.
+     *
+     * @return The current results
+     */
+    public PersistentVector<E> toVector() {
+        PersistentVector.Builder<E> results = PersistentVector.builder();
+        if (runsInParallel()) {
+            for (List<E> chunk : this.<List<E>>runParallel(ArrayList::new, chunk -> chunk::add)) {
+                results.addAll(chunk);
+            }
+        } else {
+            forEvery(results::add);
+        }
+        return results.build();
+    }
+
+    /**
+     * Runs the pipeline eagerly and groups its results by key into an immutable map of
+     * immutable vectors, which can be published to other threads without copying.
+     *
+     * Within a group the results keep their encounter order; the order of the keys is
+     * unspecified, since a PersistentMap iterates in hash order.
+     *
+     * @param key Extracts the group key of a result
+     * @param <K> The type of group keys
+     * @return The results of every key
+     */
+    public <K> PersistentMap<K, PersistentVector<E>> groupBy(Function<E, K> key) {
+        Map<K, PersistentVector.Builder<E>> groups = new HashMap<>();
+        for (E e : toVector()) {
+            groups.computeIfAbsent(key.apply(e), k -> PersistentVector.builder()).add(e);
+        }
+        PersistentMap<K, PersistentVector<E>> result = PersistentMap.empty();
+        for (Map.Entry<K, PersistentVector.Builder<E>> group : groups.entrySet()) {
+            result = result.plus(group.getKey(), group.getValue().build());
+        }
+        return result;
+    }
+
+    /**
+     * Publishes the results of this pipeline to Flow subscribers. See toPublisher(Executor);
+     * here each subscription pulls on its own virtual thread.
+     */
+    public Flow.Publisher<E> toPublisher() {
+        return toPublisher(task -> Thread.ofVirtual().start(task));
+    }
+
+    /**
+     * Publishes the results of this pipeline to Flow subscribers, honouring their demand:
+     * every subscriber runs the pipeline through its own iterator, and only pulls as many
+     * results as it has requested with Subscription.request. Nothing runs before the first
+     * request, and cancel stops the pipeline at the next element.
+     *
+     * Pulling and the onNext, onError and onComplete calls happen on the executor, one
+     * task at a time per subscriber. The stages may block, e.g. on mapAsync or on a source
+     * from fromPublisher, so the executor should not be a small shared pool.
+     *
+     * @param executor Runs the pulls of each subscription
+     * @return A publisher that can be subscribed to any number of times
+     */
+    public Flow.Publisher<E> toPublisher(Executor executor) {
+        return new IterablePublisher<>(this, executor);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator()
+    {
+        if (stages == Stage.IDENTITY) {
+            return (Iterator<E>) self.iterator();
+        }
+        return new FusedIterator<>(self.iterator(), stages);
+    }
+
+    /**
+     * Returns a Spliterator over the results that keeps what is known about the source.
+     * After stages that emit one element per element (map) the size is still exact, so
+     * toArray can presize and a parallel stream splits a list source evenly; filter keeps
+     * ORDERED, DISTINCT and SORTED but turns the size into an upper estimate. Pipelines
+     * without stateful stages split along the source's own trySplit, each part running its
+     * own copy of the stages; with limit, batch and the like the spliterator does not split.
+     *
+     * A source whose iterator holds on to something, like CarReader.read or fromPublisher,
+     * is closed once the spliterator has taken everything from it. The spliterator is also
+     * AutoCloseable, to release the source when a caller stops early.
+     */
+    @Override
+    public Spliterator<E> spliterator()
+    {
+        Spliterator<?> source = sourceSpliterator();
+        int characteristics = source.characteristics() & keeps;
+        if (!ordered || (characteristics & Spliterator.ORDERED) == 0) {
+            // SORTED is only allowed together with ORDERED
+            characteristics &= ~(Spliterator.ORDERED | Spliterator.SORTED);
+        }
+        if (!stateful) {
+            return new StageSpliterator<>(source, stages, characteristics);
+        }
+        return new FusedSpliterator<>(source, stages, characteristics & ~Spliterator.SUBSIZED);
+    }
+
+    /**
+     * The source as a Spliterator. Collections, streams, memory-mapped car files and other
+     * pipelines bring a spliterator of their own that can split and may know its size. Any
+     * other source, e.g. the lambda of CarReader.read, gets one over its iterator here
+     * rather than from Iterable.spliterator, which hides the iterator, so that an
+     * AutoCloseable iterator can still be closed.
+     */
+    private Spliterator<?> sourceSpliterator() {
+        if (self instanceof Collection || self instanceof SuperIterable
+            || self instanceof StreamSource || self instanceof MappedCarFile) {
+            return self.spliterator();
+        }
+        Iterator<?> source = self.iterator();
+        return source instanceof AutoCloseable
+            ? new ClosingSpliterator<>(source)
+            : Spliterators.spliteratorUnknownSize(source, 0);
+    }
+
+    /**
+     * Returns a sequential Stream over the results, to continue the pipeline with the
+     * Stream API, e.g. superIterable.filter(...).stream().collect(...). Closing the stream
+     * closes the source, see spliterator(); use try-with-resources when a stream over a
+     * file or a publisher may stop early, e.g. at findFirst.
+     */
+    public Stream<E> stream() {
+        return stream(false);
+    }
+
+    /**
+     * Returns a parallel Stream over the results. It runs on the common ForkJoinPool, like
+     * any parallel stream, whatever pool parallel(ForkJoinPool) chose for this pipeline.
+     */
+    public Stream<E> parallelStream() {
+        return stream(true);
+    }
+
+    private Stream<E> stream(boolean parallel) {
+        Spliterator<E> results = spliterator();
+        return StreamSupport.stream(results, parallel).onClose(() -> close(results));
+    }
+
+    /**
+     * Wraps a Stream so SuperIterable stages can run on it. The stream's spliterator is
+     * used as the source, so its size and characteristics carry over, and a parallel
+     * SuperIterable splits it as the stream would. A stream can only be consumed once, so
+     * the SuperIterable supports a single terminal operation; later ones throw
+     * IllegalStateException.
+     *
+     * @param stream The stream to read
+     * @param <T> The type of stream elements
+     * @return A SuperIterable over the stream
+     */
+    public static <T> SuperIterable<T> from(Stream<T> stream)
+    {
+        return new SuperIterable<>(new StreamSource<>(Objects.requireNonNull(stream)));
     }
 
-    public SuperIterable<E> filter(Predicate<E> pred) {
-        List<E> list = new ArrayList<>();
+    /**
+     * Terminal sink of forEveryBatch: fills one reused buffer and flushes it when full
+     * and when the run ends.
+     */
+    private static final class BatchSink<E> implements Sink<E>
+    {
+        private final List<E> buffer;
+        private final List<E> view;
+        private final int size;
+        private final Consumer<List<E>> cons;
+
+        BatchSink(int size, Consumer<List<E>> cons)
+        {
+            this.buffer = new ArrayList<>(size);
+            this.view = Collections.unmodifiableList(buffer);
+            this.size = size;
+            this.cons = cons;
+        }
+
+        @Override
+        public void accept(E e)
+        {
+            buffer.add(e);
+            if (buffer.size() == size) {
+                flush();
+            }
+        }
 
-        for (E e : self)
+        @Override
+        public void end()
         {
-            if (pred.test(e))
-            {
-                list.add(e);
+            if (!buffer.isEmpty()) {
+                flush();
             }
         }
 
-        return new SuperIterable<E>(list);
+        private void flush() {
+            cons.accept(view);
+            buffer.clear();
+        }
     }
 
-    public void forEvery(Consumer<E> cons) {
-        for (E e : self) {
-            cons.accept(e);
+    /**
+     * Terminal sink that keeps the first element and then cancels the run.
+     */
+    private static final class FirstSink<E> implements Sink<E>
+    {
+        private boolean found;
+        private E value;
+
+        @Override
+        public void accept(E e)
+        {
+            if (!found) {
+                found = true;
+                value = e;
+            }
         }
 
+        @Override
+        public boolean cancellationRequested()
+        {
+            return found;
+        }
     }
 
-    public <U> SuperIterable<U> map(Function<E, U> mapper) {
-        List<U> results = new ArrayList<>();
-        for (E e : self) {
-            results.add(mapper.apply(e));
+    /**
+     * Terminal sink that cancels the run as soon as an element tests equal to stopOn.
+     */
+    private static final class MatchSink<E> implements Sink<E>
+    {
+        private final Predicate<E> pred;
+        private final boolean stopOn;
+        private boolean decided;
+
+        MatchSink(Predicate<E> pred, boolean stopOn)
+        {
+            this.pred = pred;
+            this.stopOn = stopOn;
+        }
+
+        @Override
+        public void accept(E e)
+        {
+            if (!decided && pred.test(e) == stopOn) {
+                decided = true;
+            }
+        }
+
+        @Override
+        public boolean cancellationRequested()
+        {
+            return decided;
         }
-        return new SuperIterable<>(results);
     }
 
     /**
-     * Flattens a nested structure of SuperIterables into a single SuperIterable.
-     * This is useful when the mapping function returns a collection (SuperIterable) for each element,
-     * and we want a single flat list of all results combined.
-     *
-     * @param mapper A function that transforms an element E into a SuperIterable<U>
-     * @param <U> The type of elements in the returned SuperIterable
-     * @return A new SuperIterable containing all elements from the resulting SuperIterables
+     * The sink of mapAsync. Calls are FutureTasks started on virtual threads and queued in
+     * submission order, which is also deadline order since every call gets the same timeout.
+     * In unordered mode each finished task also puts itself on a completion queue.
      */
-    public <U> SuperIterable<U> flatMap(Function<E, SuperIterable<U>> mapper) {
-        List<U> results = new ArrayList<>();
-        for (E e : self) {
-            SuperIterable<U> innerIterable = mapper.apply(e);
-            // Iterate over the inner iterable and add each element to the flat list
-            for (U u : innerIterable) {
-                results.add(u);
+    private static final class AsyncMapSink<E, U> extends Sink.Chained<E, U>
+    {
+        private final Function<E, U> mapper;
+        private final int maxConcurrency;
+        private final boolean ordered;
+        private final long timeoutNanos;
+        private final ArrayDeque<Call<U>> inFlight = new ArrayDeque<>();
+        private final BlockingQueue<Call<U>> completed = new LinkedBlockingQueue<>();
+
+        AsyncMapSink(Sink<? super U> downstream, Function<E, U> mapper, int maxConcurrency, boolean ordered,
+                     long timeoutNanos)
+        {
+            super(downstream);
+            this.mapper = mapper;
+            this.maxConcurrency = maxConcurrency;
+            this.ordered = ordered;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        @Override
+        public void accept(E e)
+        {
+            // hand on whatever is already done, then make room for the new call
+            Call<U> done;
+            while ((done = nextIfDone()) != null) {
+                emit(done);
+            }
+            while (inFlight.size() >= maxConcurrency) {
+                emit(awaitNext());
+            }
+            long deadline = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeoutNanos;
+            Call<U> call = new Call<>(() -> mapper.apply(e), deadline, ordered ? null : completed);
+            inFlight.add(call);
+            Thread.ofVirtual().start(call);
+        }
+
+        @Override
+        public void end()
+        {
+            try {
+                while (!inFlight.isEmpty() && !downstream.cancellationRequested()) {
+                    emit(awaitNext());
+                }
+            } finally {
+                cancelAll();
+            }
+            downstream.end();
+        }
+
+        private Call<U> nextIfDone() {
+            checkOldestDeadline();
+            if (ordered) {
+                return !inFlight.isEmpty() && inFlight.peek().isDone() ? inFlight.poll() : null;
+            }
+            Call<U> done = completed.poll();
+            if (done != null) {
+                inFlight.remove(done);
             }
+            return done;
+        }
+
+        /**
+         * Waits for the next call to hand on: the oldest one when ordered, otherwise the
+         * first to complete. The oldest call has the earliest deadline, so that is how long
+         * there is to wait either way.
+         */
+        private Call<U> awaitNext() {
+            checkOldestDeadline();
+            Call<U> oldest = inFlight.peek();
+            try {
+                if (ordered) {
+                    if (oldest.deadline == Long.MAX_VALUE) {
+                        oldest.get();
+                    } else {
+                        oldest.get(oldest.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                    return inFlight.poll();
+                }
+                Call<U> done = oldest.deadline == Long.MAX_VALUE
+                    ? completed.take()
+                    : completed.poll(oldest.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    throw new TimeoutException();
+                }
+                inFlight.remove(done);
+                return done;
+            } catch (TimeoutException e) {
+                throw timedOut();
+            } catch (ExecutionException e) {
+                throw fail(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw fail(e);
+            }
+        }
+
+        /**
+         * Fails the run once the oldest call is past its deadline. Unordered, other calls
+         * finishing would otherwise keep the wait in awaitNext from ever timing out, and a
+         * hung call would hold its slot for as long as the source lasts.
+         */
+        private void checkOldestDeadline() {
+            Call<U> oldest = inFlight.peek();
+            if (oldest != null && oldest.deadline != Long.MAX_VALUE && !oldest.isDone()
+                && oldest.deadline - System.nanoTime() <= 0) {
+                throw timedOut();
+            }
+        }
+
+        private RuntimeException timedOut() {
+            return fail(new TimeoutException("mapAsync call took longer than " + Duration.ofNanos(timeoutNanos)));
+        }
+
+        private void emit(Call<U> call) {
+            U value;
+            try {
+                value = call.get();
+            } catch (ExecutionException e) {
+                throw fail(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw fail(e);
+            }
+            if (!downstream.cancellationRequested()) {
+                try {
+                    downstream.accept(value);
+                } catch (RuntimeException | Error e) {
+                    // the run is over: nothing will collect the calls still in flight
+                    cancelAll();
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Cancels everything in flight and returns the exception to throw for a failed call.
+         */
+        private RuntimeException fail(Throwable cause) {
+            cancelAll();
+            if (cause instanceof RuntimeException) {
+                return (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            return new CompletionException(cause);
+        }
+
+        private void cancelAll() {
+            for (Call<U> call : inFlight) {
+                call.cancel(true);
+            }
+            inFlight.clear();
+            completed.clear();
         }
-        return new SuperIterable<>(results);
     }
 
-    @Override
-    public Iterator<E> iterator()
+    /**
+     * One mapAsync call, with its deadline and the queue to report completion to.
+     */
+    private static final class Call<U> extends FutureTask<U>
+    {
+        final long deadline;
+        private final BlockingQueue<Call<U>> completed;
+
+        Call(Callable<U> task, long deadline, BlockingQueue<Call<U>> completed)
+        {
+            super(task);
+            this.deadline = deadline;
+            this.completed = completed;
+        }
+
+        @Override
+        protected void done()
+        {
+            if (completed != null) {
+                completed.add(this);
+            }
+        }
+    }
+
+    /**
+     * Fork/join task for one split of the source.
+     * Large splits are halved with trySplit and forked; small ones run the fused stages
+     * into their own result (a buffer, or just a sink) so no state is shared between
+     * workers. Results come back in encounter order: left split first, then right.
+     * Like the JDK's own stream tasks it is never serialized, despite ForkJoinTask being Serializable.
+     */
+    @SuppressWarnings("serial")
+    private static final class SplitTask<E, R> extends RecursiveTask<List<R>>
+    {
+        private final Spliterator<?> split;
+        private final Stage<Object, E> stages;
+        private final Supplier<R> newResult;
+        private final Function<R, Sink<? super E>> sinkInto;
+        private final long threshold;
+
+        SplitTask(Spliterator<?> split, Stage<Object, E> stages, Supplier<R> newResult,
+                  Function<R, Sink<? super E>> sinkInto, long threshold)
+        {
+            this.split = split;
+            this.stages = stages;
+            this.newResult = newResult;
+            this.sinkInto = sinkInto;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected List<R> compute()
+        {
+            if (split.estimateSize() > threshold) {
+                Spliterator<?> prefix = split.trySplit();
+                if (prefix != null) {
+                    SplitTask<E, R> left = new SplitTask<>(prefix, stages, newResult, sinkInto, threshold);
+                    SplitTask<E, R> right = new SplitTask<>(split, stages, newResult, sinkInto, threshold);
+                    left.fork();
+                    List<R> rightResults = right.compute();
+                    List<R> results = left.join();
+                    results.addAll(rightResults);
+                    return results;
+                }
+            }
+
+            R result = newResult.get();
+            Sink<Object> sink = stages.wrap(sinkInto.apply(result));
+            List<R> results = new ArrayList<>(1);
+            results.add(result);
+            while (!sink.cancellationRequested() && split.tryAdvance(sink)) {
+                // each tryAdvance pushes one source element through the stages
+            }
+            sink.end();
+            return results;
+        }
+    }
+
+    /**
+     * A Stream as a SuperIterable source, see from(Stream).
+     */
+    private static final class StreamSource<T> implements Iterable<T>
+    {
+        private final Stream<T> stream;
+
+        StreamSource(Stream<T> stream)
+        {
+            this.stream = stream;
+        }
+
+        @Override
+        public Iterator<T> iterator()
+        {
+            return Spliterators.iterator(stream.spliterator());
+        }
+
+        @Override
+        public Spliterator<T> spliterator()
+        {
+            return stream.spliterator();
+        }
+    }
+
+    /**
+     * Spliterator view of a pipeline without stateful stages, see spliterator().
+     * Like FusedIterator it pushes one source element at a time through the stages into a
+     * small buffer. forEachRemaining skips the buffer and pushes the rest of the source
+     * straight into the action. It only splits while the buffer is empty, so the split-off
+     * prefix never comes before results that were already taken out of the source.
+     */
+    private static final class StageSpliterator<E> implements Spliterator<E>, AutoCloseable
+    {
+        private final Spliterator<?> source;
+        private final Stage<Object, E> stages;
+        private final int characteristics;
+        private final List<E> buffer = new ArrayList<>();
+        private Sink<Object> sink;
+        private int position;
+        private boolean ended;
+
+        StageSpliterator(Spliterator<?> source, Stage<Object, E> stages, int characteristics)
+        {
+            this.source = source;
+            this.stages = stages;
+            this.characteristics = characteristics;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action)
+        {
+            while (position == buffer.size()) {
+                if (ended) {
+                    return false;
+                }
+                buffer.clear();
+                position = 0;
+                if (sink == null) {
+                    sink = stages.wrap(buffer::add);
+                }
+                if (!source.tryAdvance(sink)) {
+                    ended = true;
+                    sink.end();
+                }
+            }
+            action.accept(buffer.get(position++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action)
+        {
+            while (position < buffer.size()) {
+                action.accept(buffer.get(position++));
+            }
+            if (!ended) {
+                ended = true;
+                // the stages keep no state, so a second copy of them can take over from the first
+                Sink<Object> direct = stages.wrap(action::accept);
+                source.forEachRemaining(direct);
+                direct.end();
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit()
+        {
+            if (ended || position < buffer.size()) {
+                return null;
+            }
+            Spliterator<?> prefix = source.trySplit();
+            return prefix == null ? null : new StageSpliterator<>(prefix, stages, characteristics);
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            long remaining = source.estimateSize();
+            return remaining == Long.MAX_VALUE ? remaining : remaining + buffer.size() - position;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return characteristics;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Comparator<? super E> getComparator()
+        {
+            if ((characteristics & Spliterator.SORTED) == 0) {
+                throw new IllegalStateException();
+            }
+            // only stages that pass elements on unchanged keep SORTED, so the order is the source's
+            return (Comparator<? super E>) source.getComparator();
+        }
+
+        @Override
+        public void close()
+        {
+            SuperIterable.close(source);
+        }
+    }
+
+    /**
+     * Spliterator view of a pipeline with stateful stages, see spliterator(). The stages
+     * run through a FusedIterator over the source, and the spliterator does not split, so
+     * limit, batch and the like see the elements in order. Like StageSpliterator it takes
+     * the comparator and close from the source.
+     */
+    private static final class FusedSpliterator<E> implements Spliterator<E>, AutoCloseable
+    {
+        private final Spliterator<?> source;
+        private final Iterator<E> results;
+        private final int characteristics;
+        private long remaining;
+
+        FusedSpliterator(Spliterator<?> source, Stage<Object, E> stages, int characteristics)
+        {
+            this.source = source;
+            this.characteristics = characteristics;
+            this.remaining = (characteristics & Spliterator.SIZED) != 0 ? source.getExactSizeIfKnown() : Long.MAX_VALUE;
+            this.results = new FusedIterator<>(Spliterators.iterator(source), stages);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action)
+        {
+            if (!results.hasNext()) {
+                return false;
+            }
+            if (remaining != Long.MAX_VALUE) {
+                remaining--;
+            }
+            action.accept(results.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action)
+        {
+            results.forEachRemaining(action);
+            remaining = 0;
+        }
+
+        @Override
+        public Spliterator<E> trySplit()
+        {
+            return null;
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return characteristics;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Comparator<? super E> getComparator()
+        {
+            if ((characteristics & Spliterator.SORTED) == 0) {
+                throw new IllegalStateException();
+            }
+            return (Comparator<? super E>) source.getComparator();
+        }
+
+        @Override
+        public void close()
+        {
+            SuperIterable.close(source);
+        }
+    }
+
+    /**
+     * Spliterator over a source iterator that must be closed, such as the one of
+     * CarReader.read. It splits like Iterable's default spliterator, by copying a batch
+     * into an array, and closes the iterator once it is exhausted or close is called.
+     */
+    private static final class ClosingSpliterator<T> implements Spliterator<T>, AutoCloseable
+    {
+        private final Iterator<T> iterator;
+        private final Spliterator<T> split;
+        private boolean closed;
+
+        ClosingSpliterator(Iterator<T> iterator)
+        {
+            this.iterator = iterator;
+            this.split = Spliterators.spliteratorUnknownSize(iterator, 0);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action)
+        {
+            if (split.tryAdvance(action)) {
+                return true;
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action)
+        {
+            split.forEachRemaining(action);
+            close();
+        }
+
+        @Override
+        public Spliterator<T> trySplit()
+        {
+            return split.trySplit();
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return split.estimateSize();
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return split.characteristics();
+        }
+
+        @Override
+        public void close()
+        {
+            if (!closed) {
+                closed = true;
+                SuperIterable.close(iterator);
+            }
+        }
+    }
+
+    /**
+     * Pull-based view of a fused pipeline.
+     * Source elements are pushed through the stages one at a time, and whatever
+     * comes out (zero elements for a rejected filter, several for a flatMap) is
+     * parked in a small buffer until next() hands it out. When the source runs dry
+     * the stages are ended, which may flush a last few elements into the buffer.
+     */
+    private static final class FusedIterator<E> implements Iterator<E>
     {
-        return self.iterator();
+        private final Iterator<?> upstream;
+        private final Sink<Object> sink;
+        private final List<E> buffer = new ArrayList<>();
+        private int position;
+        private boolean ended;
+
+        FusedIterator(Iterator<?> upstream, Stage<Object, E> stages)
+        {
+            this.upstream = upstream;
+            this.sink = stages.wrap(buffer::add);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (position == buffer.size()) {
+                if (ended) {
+                    return false;
+                }
+                buffer.clear();
+                position = 0;
+                if (sink.cancellationRequested() || !upstream.hasNext()) {
+                    ended = true;
+                    close(upstream);
+                    sink.end();
+                } else {
+                    sink.accept(upstream.next());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public E next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.get(position++);
+        }
     }
 
     public static void main(String[] args) {
@@ -109,5 +1562,124 @@ public class SuperIterable<E> implements Iterable<E>
             .filter(n -> n <= 3) // verify with a smaller set
             .flatMap(n -> new SuperIterable<>(List.of(n, n + 10)))
             .forEvery(n -> System.out.println("FlatMapped: " + n));
+
+        System.out.println("\nTesting laziness - stages run only when forEvery pulls:");
+        SuperIterable<Integer> lazy = superIterable
+            .filter(n -> { System.out.println("  filter sees " + n); return n % 5 == 0; })
+            .map(n -> n * 100);
+        System.out.println("Pipeline built, nothing filtered yet");
+        lazy.forEvery(n -> System.out.println("Lazy result: " + n));
+
+        System.out.println("\nTesting materialize method - eager snapshot:");
+        superIterable
+            .map(n -> n * n)
+            .materialize()
+            .forEvery(n -> System.out.println("Squared: " + n));
+
+        System.out.println("\nTesting toVector and groupBy methods - immutable, structurally shared results:");
+        PersistentVector<Integer> squares = superIterable.map(n -> n * n).toVector();
+        PersistentVector<Integer> more = squares.plus(121).plus(144);
+        System.out.println("Squares: " + squares + ", two more sharing their storage: " + more.slice(8, 12));
+        System.out.println("Grouped by parity: " + superIterable.groupBy(n -> n % 2 == 0 ? "even" : "odd"));
+
+        System.out.println("\nTesting short-circuiting operations:");
+        System.out.println("First even number > 4: " + superIterable.filter(n -> n > 4).filter(n -> n % 2 == 0).findFirst());
+        System.out.println("Any number > 9: " + superIterable.anyMatch(n -> n > 9));
+        System.out.println("All numbers positive: " + superIterable.allMatch(n -> n > 0));
+        System.out.println("No number > 10: " + superIterable.noneMatch(n -> n > 10));
+        superIterable
+            .dropWhile(n -> n < 3)
+            .takeWhile(n -> n < 8)
+            .limit(3)
+            .forEvery(n -> System.out.println("Dropped < 3, taken while < 8, limited to 3: " + n));
+
+        System.out.println("\nTesting parallel method - squaring on the common pool, encounter order kept:");
+        superIterable
+            .parallel()
+            .map(n -> n * n)
+            .forEvery(n -> System.out.println("Parallel squared: " + n));
+
+        System.out.println("\nTesting mapAsync method - ten 100 ms lookups on virtual threads at once:");
+        long start = System.nanoTime();
+        superIterable
+            .mapAsync(n -> {
+                try {
+                    Thread.sleep(100);  // stands in for a database lookup
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return "id-" + n;
+            }, 10)
+            .forEvery(id -> System.out.println("Looked up: " + id));
+        System.out.println("All lookups took " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        System.out.println("\nTesting batch and window methods:");
+        superIterable.batch(4).forEvery(b -> System.out.println("Batch of up to 4: " + b));
+        superIterable.window(3, 2).forEvery(w -> System.out.println("Window of 3, every 2: " + w));
+        superIterable.forEveryBatch(5, b -> System.out.println("One call for " + b.size() + " elements: " + b));
+
+        System.out.println("\nTesting fromPublisher and toPublisher methods - a push stream through the same stages:");
+        try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>()) {
+            SuperIterable<Integer> pushed = SuperIterable.fromPublisher(publisher, 4);
+            Thread producer = Thread.ofVirtual().start(() -> {
+                while (publisher.getNumberOfSubscribers() == 0) {
+                    Thread.onSpinWait();  // items submitted before forEvery subscribes would be dropped
+                }
+                numbers.forEach(publisher::submit);
+            });
+            pushed.filter(n -> n % 3 == 0)
+                .takeWhile(n -> n < 9)
+                .forEvery(n -> System.out.println("Pushed and filtered: " + n));
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        superIterable.map(n -> "n" + n).toPublisher().subscribe(new Flow.Subscriber<String>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(String item) {
+                received.add(item);
+                subscription.request(1);  // one at a time, as a slow consumer would
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Subscriber received, one request at a time: " + received);
+
+        System.out.println("\nTesting instrumented and explain methods - counters per stage:");
+        SuperIterable<String> measured = superIterable
+            .instrumented("demo")
+            .filter(n -> n % 2 == 0)
+            .map(n -> "even-" + n)
+            .limit(3);
+        System.out.println(measured.explain());
+        measured.forEvery(s -> { });
+        System.out.println(measured.explain());
+
+        System.out.println("\nTesting mapToInt method - doubling without boxing:");
+        IntSuperIterable doubled = superIterable.mapToInt(Integer::intValue).map(n -> n * 2);
+        System.out.println("Doubled: " + doubled + " sum=" + doubled.sum() + " max=" + doubled.max().getAsInt());
     }
 }
@@ -0,0 +1,159 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for incrementally maintained aggregate views.
+ */
+public class AggregateViewTest
+    extends TestCase
+{
+    public void testViewsFollowAddRemoveAndUpdate()
+    {
+        Car red = Car.withGasColorPassengers(15.5, "RED", "Toyota");
+        Car blue = Car.withGasColorPassengers(8.2, "BLUE", "Honda");
+        Car green = Car.withGasColorPassengers(20.0, "GREEN", "Ford");
+
+        IndexedCollection<Car> cars = new IndexedCollection<>();
+        cars.add(red);
+        AggregateView.Count<Car> count = cars.addView(AggregateView.count());
+        AggregateView.Sum<Car> gas = cars.addView(AggregateView.sum(Car::getGasLevel));
+        AggregateView.MinMax<Car> gasRange = cars.addView(AggregateView.minMax(Car::getGasLevel));
+        AggregateView.CountBy<Car, String> perColor = cars.addView(AggregateView.countBy(Car::getColor));
+        AggregateView.GroupBy<Car, String> byColor = cars.addView(AggregateView.groupBy(Car::getColor));
+        assertEquals(1, count.get());
+        assertEquals(15.5, gas.get(), 0.0);
+
+        cars.add(blue);
+        cars.add(green);
+        assertEquals(3, count.get());
+        assertEquals(43.7, gas.get(), 1e-9);
+        assertEquals(8.2, gasRange.min().getAsDouble(), 0.0);
+        assertEquals(20.0, gasRange.max().getAsDouble(), 0.0);
+
+        blue.setColor("RED");
+        blue.setGasLevel(30.0);
+        cars.update(blue);
+        cars.remove(green);
+        assertEquals(2, count.get());
+        assertEquals(45.5, gas.get(), 1e-9);
+        assertEquals(15.5, gasRange.min().getAsDouble(), 0.0);
+        assertEquals(30.0, gasRange.max().getAsDouble(), 0.0);
+        assertEquals(2, perColor.get("RED"));
+        assertEquals(0, perColor.get("GREEN"));
+        assertEquals(Collections.singletonMap("RED", 2L), perColor.asMap());
+        assertEquals(Arrays.asList(red, blue), byColor.get("RED"));
+        assertTrue(byColor.get("BLUE").isEmpty());
+
+        // an infinite value shows in the sum only while it is in the collection
+        Car overflowing = Car.withGasColorPassengers(Double.POSITIVE_INFINITY, "RED", "Kia");
+        cars.add(overflowing);
+        assertEquals(Double.POSITIVE_INFINITY, gas.get());
+        Car nan = Car.withGasColorPassengers(Double.NaN, "RED", "Kia");
+        cars.add(nan);
+        assertTrue(Double.isNaN(gas.get()));
+        cars.remove(nan);
+        cars.remove(overflowing);
+        assertEquals(45.5, gas.get(), 1e-9);
+
+        cars.remove(red);
+        cars.remove(blue);
+        assertFalse(gasRange.min().isPresent());
+        try {
+            new IndexedCollection<Car>().addView(count);
+            fail("a view belongs to one collection");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testMatchesRecomputationAfterRandomChanges()
+    {
+        Random random = new Random(42);
+        String[] cities = {"London", "New York", "Paris", "Tokyo", "Lima"};
+        CollectorOperators.User[] users = new CollectorOperators.User[500];
+        IndexedCollection<CollectorOperators.User> live = new IndexedCollection<>();
+        AggregateView.CountBy<CollectorOperators.User, String> perCity =
+            live.addView(AggregateView.countBy(CollectorOperators.User::getCity));
+        AggregateView.Sum<CollectorOperators.User> ages = live.addView(AggregateView.sum(CollectorOperators.User::getAge));
+        for (int i = 0; i < 20_000; i++) {
+            int slot = random.nextInt(users.length);
+            if (users[slot] != null && random.nextBoolean()) {
+                live.remove(users[slot]);
+                users[slot] = null;
+            } else if (users[slot] == null) {
+                users[slot] = new CollectorOperators.User("u" + i, cities[random.nextInt(cities.length)], random.nextInt(90));
+                live.add(users[slot]);
+            }
+        }
+        Map<String, Long> expected = Arrays.stream(users)
+            .filter(u -> u != null)
+            .collect(Collectors.groupingBy(CollectorOperators.User::getCity, Collectors.counting()));
+        assertEquals(expected, perCity.asMap());
+        assertEquals(Arrays.stream(users).filter(u -> u != null).mapToInt(CollectorOperators.User::getAge).sum(),
+            ages.get(), 0.0);
+    }
+
+    public void testViewsCanBePolledWhileTheCollectionChanges() throws InterruptedException
+    {
+        IndexedCollection<CollectorOperators.User> live = new IndexedCollection<>();
+        AggregateView.Count<CollectorOperators.User> count = live.addView(AggregateView.count());
+        AggregateView.CountBy<CollectorOperators.User, String> perCity =
+            live.addView(AggregateView.countBy(CollectorOperators.User::getCity));
+        AggregateView.GroupBy<CollectorOperators.User, String> byCity =
+            live.addView(AggregateView.groupBy(CollectorOperators.User::getCity));
+        String[] cities = {"London", "Paris", "Tokyo"};
+        CollectorOperators.User[] users = new CollectorOperators.User[300];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new CollectorOperators.User("u" + i, cities[i % cities.length], i % 90);
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(7);
+            while (!done.get()) {
+                CollectorOperators.User user = users[random.nextInt(users.length)];
+                if (!live.add(user)) {
+                    live.remove(user);
+                }
+            }
+        });
+        Thread poller = new Thread(() -> {
+            try {
+                for (int poll = 0; poll < 20_000; poll++) {
+                    // every snapshot is taken between two changes, so the parts agree
+                    Map<String, Long> counts = perCity.asMap();
+                    long total = counts.values().stream().mapToLong(Long::longValue).sum();
+                    assertTrue(total <= users.length);
+                    for (Map.Entry<String, List<CollectorOperators.User>> group : byCity.asMap().entrySet()) {
+                        assertFalse(group.getValue().isEmpty());
+                        assertFalse(group.getValue().contains(null));
+                    }
+                    count.get();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            } finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+        poller.start();
+        writer.join();
+        poller.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(live.size(), count.get());
+        assertEquals(live.size(), perCity.asMap().values().stream().mapToLong(Long::longValue).sum());
+    }
+}
@@ -0,0 +1,88 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for the binary car format of CarWriter and CarReader.
+ */
+public class CarCodecTest
+    extends TestCase
+{
+    private static byte[] encode(Iterable<Car> cars) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CarWriter writer = new CarWriter(bytes)) {
+            writer.writeAll(cars);
+        }
+        return bytes.toByteArray();
+    }
+
+    public void testRoundTripKeepsEveryValue() throws IOException
+    {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            longName.append((char) ('a' + i % 26));
+        }
+        List<Car> cars = new ArrayList<>();
+        cars.add(Car.withGasColorPassengersAndTrunk(15.5, "RED", "Toyota",
+            new String[]{"Alice", "Bob"}, new String[]{"Spare Tire"}));
+        cars.add(Car.withGasColorPassengers(-0.0, null, "Honda", "Zoë", null));
+        cars.add(Car.withGasColorPassengers(Double.NaN, "RED", null));
+        cars.add(Car.withGasColorPassengers(Math.PI, "BLUE", "Toyota", longName.toString()));
+        cars.add(Car.withGasColorPassengers(-1e300, "RED", "Toyota"));
+
+        List<Car> read = new ArrayList<>();
+        new CarReader(new ByteArrayInputStream(encode(cars))).forEachRemaining(read::add);
+        assertEquals(CarFixtures.strings(cars), CarFixtures.strings(read));
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(read.get(1).getGasLevel()));
+    }
+
+    public void testRepeatedValuesAreSmall() throws IOException
+    {
+        List<Car> cars = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            cars.add(Car.withGasColorPassengers(i / 10.0, i % 2 == 0 ? "RED" : "GREEN", "Toyota"));
+        }
+        // flags, a gas level of at most 3 bytes, 2 dictionary references and 2 empty lists
+        assertTrue(encode(cars).length <= 4 + 32 + 1000 * 8);
+
+        byte[] truncated = Arrays.copyOf(encode(cars), 20);
+        CarReader reader = new CarReader(new ByteArrayInputStream(truncated));
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            fail("a truncated stream must be reported");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testReadsFileLazily() throws IOException
+    {
+        Path file = Files.createTempFile("cars", ".bin");
+        try {
+            List<Car> cars = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                cars.add(Car.withGasColorPassengers(i, i % 3 == 0 ? "RED" : "BLUE", "Brand" + (i % 7), "P" + i));
+            }
+            SuperIterable<Car> red = new SuperIterable<>(cars).filter(c -> "RED".equals(c.getColor()));
+            assertEquals(1667, CarWriter.write(file, red));
+
+            SuperIterable<Car> checkpoint = CarReader.read(file);
+            assertEquals(CarFixtures.strings(red), CarFixtures.strings(checkpoint));
+            assertEquals(3.0, checkpoint.map(Car::getGasLevel).findFirst().get().doubleValue()
+                + checkpoint.limit(2).mapToDouble(Car::getGasLevel).sum(), 0.0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.functional.java;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cars shared by the tests of the car storage formats.
+ */
+final class CarFixtures
+{
+    private CarFixtures()
+    {
+    }
+
+    /**
+     * Five hand-picked cars: repeated colors and brands, passengers, and one car with a trunk.
+     */
+    static List<Car> fleet()
+    {
+        List<Car> cars = new ArrayList<>();
+        cars.add(Car.withGasColorPassengers(15.5, "RED", "Toyota", "Alice", "Bob"));
+        cars.add(Car.withGasColorPassengers(8.2, "BLUE", "Honda"));
+        cars.add(Car.withGasColorPassengersAndTrunk(20.0, "GREEN", "Ford",
+            new String[]{"Charlie"}, new String[]{"Spare Tire", "Jack"}));
+        cars.add(Car.withGasColorPassengers(5.5, "RED", "BMW", "David"));
+        cars.add(Car.withGasColorPassengers(12.0, "WHITE", "Toyota"));
+        return cars;
+    }
+
+    /**
+     * n generated cars cycling through four colors and three brands; every other car has
+     * passengers and every fifth a trunk.
+     */
+    static List<Car> fleet(int n)
+    {
+        String[] colors = {"RED", "BLUE", "GREEN", "WHITE"};
+        String[] brands = {"Toyota", "Honda", "Ford", "BMW"};
+        List<Car> cars = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            cars.add(Car.withGasColorPassengersAndTrunk(i / 4.0, colors[i % 4], brands[i % 3],
+                i % 2 == 0 ? new String[]{"Alice", "P" + i} : new String[0],
+                i % 5 == 0 ? new String[]{"Spare Tire"} : new String[0]));
+        }
+        return cars;
+    }
+
+    /**
+     * Car has no equals, so tests compare what toString shows: every field.
+     */
+    static List<String> strings(Iterable<Car> cars)
+    {
+        List<String> result = new ArrayList<>();
+        for (Car car : cars) {
+            result.add(car.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,70 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for the columnar CarStore.
+ */
+public class CarStoreTest
+    extends TestCase
+{
+    public void testRowsRoundTrip()
+    {
+        CarStore store = CarStore.of(CarFixtures.fleet());
+        assertEquals(5, store.size());
+        assertEquals("GREEN", store.color(2));
+        assertEquals("Ford", store.brand(2));
+        assertEquals(20.0, store.gasLevel(2), 0.0);
+        assertEquals(Arrays.asList("Charlie"), store.passengers(2));
+        assertEquals(Arrays.asList("Spare Tire", "Jack"), store.trunk(2));
+        assertEquals(Collections.emptyList(), store.trunk(0));
+
+        Car view = store.get(0);
+        assertEquals("Car{color='RED', brand='Toyota', gasLevel=15.5, passengers=[Alice, Bob], trunk=[]}", view.toString());
+        try {
+            view.setGasLevel(1.0);
+            fail("views must be read-only");
+        } catch (UnsupportedOperationException expected) {
+            assertEquals(15.5, store.gasLevel(0), 0.0);
+        }
+    }
+
+    public void testGrowsPastInitialCapacity()
+    {
+        CarStore store = new CarStore();
+        for (int i = 0; i < 1000; i++) {
+            store.add(i, i % 2 == 0 ? "RED" : null, "Brand" + (i % 7),
+                Collections.nCopies(i % 3, "p" + i), Collections.emptyList());
+        }
+        assertEquals(1000, store.size());
+        assertEquals(999.0, store.gasLevel(999), 0.0);
+        assertNull(store.color(999));
+        assertEquals("Brand5", store.brand(999));
+        assertEquals(Arrays.asList("p998", "p998"), store.passengers(998));
+        assertEquals(500, store.selectColors("RED").length);
+    }
+
+    public void testSelectAndSort()
+    {
+        CarStore store = CarStore.of(CarFixtures.fleet());
+        assertTrue(Arrays.equals(new int[]{0, 3}, store.selectColors("RED", "PURPLE")));
+        assertTrue(Arrays.equals(new int[]{0, 2, 4}, store.selectGasLevel(g -> g > 10.0)));
+
+        Criterion<Car> redToyota = c -> "RED".equals(c.getColor());
+        int[] rows = store.select(redToyota.andCriterion(c -> "Toyota".equals(c.getBrand())));
+        assertTrue(Arrays.equals(new int[]{0}, rows));
+
+        assertTrue(Arrays.equals(new int[]{3, 1, 4, 0, 2}, store.rowsSortedByGas()));
+        assertTrue(Arrays.equals(new int[]{4, 2}, store.sortByGas(new int[]{2, 4})));
+
+        List<String> brands = new ArrayList<>();
+        store.cars(store.selectColors("RED")).map(Car::getBrand).forEvery(brands::add);
+        assertEquals(Arrays.asList("Toyota", "BMW"), brands);
+        assertEquals(61.2, store.gasLevels().sum(), 1e-9);
+    }
+}
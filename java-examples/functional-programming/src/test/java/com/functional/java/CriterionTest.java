@@ -0,0 +1,163 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for Criterion trees and their compiled form.
+ */
+public class CriterionTest
+    extends TestCase
+{
+    private static List<Integer> range(int size)
+    {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    /**
+     * A named criterion that counts how often it is evaluated.
+     */
+    private static Criterion<Integer> counted(String name, AtomicInteger calls, Criterion<Integer> test)
+    {
+        return Criterion.named(name, n -> {
+            calls.incrementAndGet();
+            return test.test(n);
+        });
+    }
+
+    public void testCombinatorsBuildInspectableTree()
+    {
+        Criterion<Integer> even = Criterion.named("even", n -> n % 2 == 0);
+        Criterion<Integer> big = Criterion.named("big", n -> n > 10);
+        Criterion<Integer> tree = even.orCriterion(big).andCriterion(even.negate());
+        assertTrue(tree instanceof CriterionTree.And);
+        assertEquals("((even OR big) AND NOT even)", tree.toString());
+        assertTrue(tree.test(11));
+        assertFalse(tree.test(12));
+        assertFalse(tree.test(3));
+    }
+
+    public void testNormalizePushesNegationsAndFlattens()
+    {
+        Criterion<Integer> a = Criterion.named("a", n -> n > 0);
+        Criterion<Integer> b = Criterion.named("b", n -> n > 1);
+        Criterion<Integer> c = Criterion.named("c", n -> n > 2);
+        Criterion<Integer> tree = a.andCriterion(b.orCriterion(c).negate()).andCriterion(c).negate();
+        Criterion<Integer> normal = CriterionCompiler.normalize(tree, false);
+        assertEquals("(NOT a OR b OR c OR NOT c)", normal.toString());
+    }
+
+    public void testCompiledCriterionMatchesOriginal()
+    {
+        Criterion<Integer> tree = Criterion.<Integer>named("div3", n -> n % 3 == 0)
+            .orCriterion(n -> n % 5 == 0)
+            .andCriterion(Criterion.<Integer>named("odd", n -> n % 2 == 1).negate().negate())
+            .orCriterion(n -> n > 95)
+            .negate();
+        Criterion<Integer> compiled = tree.compile(range(50));
+        for (int n = -20; n < 120; n++) {
+            assertEquals("n=" + n, tree.test(n), compiled.test(n));
+        }
+    }
+
+    public void testCompileRunsSelectiveLeafFirst()
+    {
+        AtomicInteger commonCalls = new AtomicInteger();
+        AtomicInteger rareCalls = new AtomicInteger();
+        Criterion<Integer> common = counted("common", commonCalls, n -> n % 100 != 0);
+        Criterion<Integer> rare = counted("rare", rareCalls, n -> n % 100 == 0);
+
+        Criterion<Integer> compiled = common.andCriterion(rare).compile(range(1000));
+        assertEquals("compiled (rare AND common)", compiled.toString());
+
+        commonCalls.set(0);
+        rareCalls.set(0);
+        List<Integer> data = range(10_000);
+        int matches = 0;
+        for (Integer n : data) {
+            if (compiled.test(n)) {
+                matches++;
+            }
+        }
+        assertEquals(0, matches);
+        assertEquals(10_000, rareCalls.get());
+        assertEquals(100, commonCalls.get());
+    }
+
+    public void testAdaptiveReordersAsDataDrifts() throws InterruptedException
+    {
+        Criterion<Integer> small = Criterion.named("small", n -> n < 500);
+        Criterion<Integer> even = Criterion.named("even", n -> n % 2 == 0);
+        Criterion<Integer> written = small.andCriterion(even);
+        AdaptiveCriterion<Integer> adaptive = written.adaptive(1, 100);
+        assertEquals("(small AND even)", adaptive.current().toString());
+
+        // mostly large numbers: small fails far more often than even
+        for (int n = 0; n < 10_000; n++) {
+            assertEquals(written.test(n), adaptive.test(n));
+        }
+        assertEquals("(small AND even)", adaptive.current().toString());
+
+        // now everything is small, so even is the one that decides
+        for (int i = 0; i < 1_000; i++) {
+            int n = i % 500;
+            assertEquals(written.test(n), adaptive.test(n));
+        }
+        assertEquals("(even AND small)", adaptive.current().toString());
+        assertTrue(adaptive.replans() >= 100);
+        List<AdaptiveCriterion.LeafStats> stats = adaptive.statistics();
+        assertEquals("small", stats.get(0).leaf());
+        assertEquals(11_000, stats.get(0).samples());
+        assertEquals(0.5, stats.get(1).passRate(), 0.01);
+
+        AdaptiveCriterion<Integer> shared = written.negate().adaptive(4, 50);
+        AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int n = 0; n < 20_000; n++) {
+                    if (shared.test(n % 1000) == written.test(n % 1000)) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, mismatches.get());
+        assertTrue(shared.replans() > 0);
+    }
+
+    public void testInMatchesSmallAndLargeValueSets()
+    {
+        Criterion<Car> warm = Criterion.in(Car::getColor, Arrays.asList("RED", "ORANGE", "RED"));
+        Car red = Car.withGasColorPassengers(1.0, "RED", "Toyota");
+        Car blue = Car.withGasColorPassengers(1.0, "BLUE", "Toyota");
+        Car unpainted = Car.withGasColorPassengers(1.0, null, "Toyota");
+        assertTrue(warm.test(red));
+        assertFalse(warm.test(blue));
+        assertFalse(warm.test(unpainted));
+        assertEquals("in [RED, ORANGE]", warm.toString());
+
+        List<Integer> multiplesOf7 = new ArrayList<>();
+        for (int n = 0; n < 1000; n += 7) {
+            multiplesOf7.add(n);
+        }
+        Criterion<Integer> large = Criterion.in(n -> n, multiplesOf7);
+        for (int n = -10; n < 1010; n++) {
+            assertEquals("n=" + n, n >= 0 && n < 1000 && n % 7 == 0, large.test(n));
+        }
+        assertFalse(large.test(null));
+        assertTrue(Criterion.<Integer, Integer>in(n -> n, Arrays.asList(1, null)).test(null));
+    }
+}
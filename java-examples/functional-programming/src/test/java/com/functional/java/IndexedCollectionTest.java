@@ -0,0 +1,107 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Unit tests for IndexedCollection query planning and index maintenance.
+ */
+public class IndexedCollectionTest
+    extends TestCase
+{
+    private static final Function<Car, String> COLOR = Car::getColor;
+    private static final Function<Car, String> BRAND = Car::getBrand;
+    private static final ToDoubleFunction<Car> GAS = Car::getGasLevel;
+    private static final String[] COLORS = {"RED", "GREEN", "BLUE", "WHITE", null};
+    private static final String[] BRANDS = {"Toyota", "Honda", "Ford", "BMW"};
+
+    private static IndexedCollection<Car> indexed()
+    {
+        return new IndexedCollection<Car>()
+            .addHashIndex("color", COLOR)
+            .addHashIndex("brand", BRAND)
+            .addSortedIndex("gas", GAS);
+    }
+
+    private static List<Car> scan(Iterable<Car> cars, Criterion<Car> crit)
+    {
+        return App.getAllCriterion(cars, crit);
+    }
+
+    public void testIndexedQueryUsesIndexIntersection()
+    {
+        IndexedCollection<Car> cars = indexed();
+        cars.add(Car.withGasColorPassengers(15.5, "RED", "Toyota"));
+        cars.add(Car.withGasColorPassengers(8.2, "BLUE", "Honda"));
+        cars.add(Car.withGasColorPassengers(20.0, "GREEN", "Ford"));
+        cars.add(Car.withGasColorPassengers(5.5, "RED", "BMW"));
+
+        Criterion<Car> redAndFull = Criterion.in(COLOR, Arrays.asList("RED"))
+            .andCriterion(Criterion.greaterThan(GAS, 10.0));
+        assertEquals("(color in [RED] AND gas in (10.0, Infinity]) -> 1 rows", cars.explain(redAndFull));
+        assertEquals(scan(cars, redAndFull), cars.query(redAndFull));
+
+        Criterion<Car> withResidual = redAndFull.andCriterion(c -> c.getPassengers().isEmpty());
+        assertEquals("(color in [RED] AND gas in (10.0, Infinity]) -> 1 rows, then filter", cars.explain(withResidual));
+
+        Criterion<Car> unindexed = Criterion.in(Car::getColor, Arrays.asList("RED"));
+        assertEquals("full scan of 4 rows", cars.explain(unindexed));
+        assertEquals(2, cars.query(unindexed).size());
+    }
+
+    public void testQueriesMatchScanAfterAddRemoveAndUpdate()
+    {
+        Random random = new Random(42);
+        IndexedCollection<Car> cars = indexed();
+        List<Car> all = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Car car = Car.withGasColorPassengers(random.nextInt(40) / 2.0,
+                COLORS[random.nextInt(COLORS.length)], BRANDS[random.nextInt(BRANDS.length)]);
+            all.add(car);
+            cars.add(car);
+        }
+        for (int i = 0; i < 500; i++) {
+            cars.remove(all.get(random.nextInt(all.size())));
+        }
+        for (int i = 0; i < 300; i++) {
+            Car car = all.get(random.nextInt(all.size()));
+            car.setColor(COLORS[random.nextInt(COLORS.length)]);
+            car.setGasLevel(random.nextInt(40) / 2.0);
+            cars.update(car);
+        }
+        for (int i = 0; i < 200; i++) {
+            cars.add(all.get(random.nextInt(all.size())));
+        }
+
+        List<Criterion<Car>> queries = Arrays.asList(
+            Criterion.in(COLOR, Arrays.asList("RED", null)),
+            Criterion.in(COLOR, Arrays.asList("RED")).andCriterion(Criterion.greaterThan(GAS, 10.0)),
+            Criterion.in(BRAND, Arrays.asList("BMW")).orCriterion(Criterion.between(GAS, 2.0, 4.5)),
+            Criterion.in(COLOR, Arrays.asList("BLUE")).negate().andCriterion(Criterion.lessThan(GAS, 3.0)),
+            Criterion.in(BRAND, Arrays.asList("Ford")).andCriterion(c -> c.getGasLevel() % 1 == 0),
+            Criterion.<Car>greaterThan(GAS, 5.0).orCriterion(c -> "Honda".equals(c.getBrand()))
+        );
+        for (Criterion<Car> query : queries) {
+            assertEquals(query.toString(), scan(cars, query), cars.query(query));
+        }
+    }
+
+    public void testIndexAddedToPopulatedCollection()
+    {
+        IndexedCollection<Car> cars = new IndexedCollection<>();
+        Car red = Car.withGasColorPassengers(1.0, "RED", "Toyota");
+        cars.add(red);
+        assertFalse(cars.add(red));
+        cars.addHashIndex("color", COLOR);
+        assertEquals(Arrays.asList(red), cars.query(Criterion.in(COLOR, Arrays.asList("RED"))));
+        assertTrue(cars.remove(red));
+        assertFalse(cars.remove(red));
+        assertEquals(0, cars.query(Criterion.in(COLOR, Arrays.asList("RED"))).size());
+    }
+}
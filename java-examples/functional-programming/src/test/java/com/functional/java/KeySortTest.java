@@ -0,0 +1,81 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for KeySort, checked against sorting with GasComparator.
+ */
+public class KeySortTest
+    extends TestCase
+{
+    private static final double[] SPECIAL = {
+        0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MAX_VALUE
+    };
+
+    private static List<Car> randomCars(int size, long seed)
+    {
+        Random random = new Random(seed);
+        List<Car> cars = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            double gas = random.nextInt(10) == 0
+                ? SPECIAL[random.nextInt(SPECIAL.length)]
+                : (random.nextInt(200) - 50) / 4.0;
+            Car car = new Car();
+            car.setGasLevel(gas);
+            car.setBrand("car" + i);
+            cars.add(car);
+        }
+        return cars;
+    }
+
+    public void testSortByKeyMatchesStableGasComparatorSort()
+    {
+        for (int size : new int[]{0, 1, 10, 63, 64, 1000, 20_000}) {
+            List<Car> cars = randomCars(size, size);
+
+            List<Car> expected = new ArrayList<>(cars);
+            expected.sort(new GasComparator());
+            assertEquals("size " + size, expected, KeySort.sortByKey(cars, Car::getGasLevel));
+
+            List<Car> expectedDesc = new ArrayList<>(cars);
+            expectedDesc.sort(new GasComparator().reversed());
+            assertEquals("size " + size, expectedDesc, KeySort.sortByKey(cars, Car::getGasLevel, true));
+        }
+    }
+
+    public void testTopAndBottomKMatchSortedPrefix()
+    {
+        List<Car> cars = randomCars(5000, 7);
+        List<Car> ascending = new ArrayList<>(cars);
+        ascending.sort(new GasComparator());
+        List<Car> descending = new ArrayList<>(cars);
+        descending.sort(new GasComparator().reversed());
+
+        for (int k : new int[]{0, 1, 10, 4999, 5000, 6000}) {
+            int expectedSize = Math.min(k, cars.size());
+            assertEquals("k " + k, ascending.subList(0, expectedSize), KeySort.bottomK(cars, Car::getGasLevel, k));
+            assertEquals("k " + k, descending.subList(0, expectedSize), KeySort.topK(cars, Car::getGasLevel, k));
+        }
+    }
+
+    public void testIndexForms()
+    {
+        double[] keys = {3.0, -1.0, 2.0, -1.0, Double.NaN};
+        assertTrue(Arrays.equals(new int[]{1, 3, 2, 0, 4}, KeySort.sortedIndices(keys)));
+        assertTrue(Arrays.equals(new int[]{4, 0, 2, 1, 3}, KeySort.sortedIndices(keys, true)));
+        assertTrue(Arrays.equals(new int[]{1, 3}, KeySort.bottomK(keys, 2)));
+        assertTrue(Arrays.equals(new int[]{4, 0, 2}, KeySort.topK(keys, 3)));
+
+        CarStore store = CarStore.of(randomCars(300, 3));
+        int[] sorted = store.rowsSortedByGas();
+        assertTrue(Arrays.equals(Arrays.copyOf(sorted, 5), store.rowsWithLowestGas(5)));
+        int[] highest = store.rowsWithHighestGas(1);
+        // compared with Double.compare because the highest key is NaN, which assertEquals rejects
+        assertEquals(0, Double.compare(store.gasLevel(sorted[sorted.length - 1]), store.gasLevel(highest[0])));
+    }
+}
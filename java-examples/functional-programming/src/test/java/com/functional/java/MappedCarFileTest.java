@@ -0,0 +1,95 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for reading cars from a memory-mapped file.
+ */
+public class MappedCarFileTest
+    extends TestCase
+{
+    private Path file;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        file = Files.createTempFile("cars", ".csv");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    public void testRoundTripAcrossSmallWindows() throws IOException
+    {
+        List<Car> cars = CarFixtures.fleet(200);
+        cars.add(Car.withGasColorPassengers(-1.5e-7, null, "Kia"));
+        MappedCarFile.write(file, cars);
+
+        assertEquals(CarFixtures.strings(cars), CarFixtures.strings(MappedCarFile.open(file)));
+        // a 64 byte window forces a remap every record or two
+        assertEquals(CarFixtures.strings(cars), CarFixtures.strings(new MappedCarFile(file, 64, false)));
+    }
+
+    public void testParsesHandWrittenLines() throws IOException
+    {
+        Files.write(file, "15.5,RED,Toyota,Alice;Bob,Spare Tire\r\n\n1e2,BLUE,Honda,,\n8,GREEN,Ford,,Jack"
+            .getBytes(StandardCharsets.UTF_8));
+        List<String> cars = CarFixtures.strings(MappedCarFile.open(file));
+        assertEquals(Arrays.asList(
+            "Car{color='RED', brand='Toyota', gasLevel=15.5, passengers=[Alice, Bob], trunk=[Spare Tire]}",
+            "Car{color='BLUE', brand='Honda', gasLevel=100.0, passengers=[], trunk=[]}",
+            "Car{color='GREEN', brand='Ford', gasLevel=8.0, passengers=[], trunk=[Jack]}"), cars);
+
+        Files.write(file, "RED,Toyota\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            MappedCarFile.open(file).iterator().next();
+            fail("a record with missing fields must be rejected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testSplitsAtRecordBoundaries() throws IOException
+    {
+        List<Car> cars = CarFixtures.fleet(20_000);
+        MappedCarFile.write(file, cars);
+        MappedCarFile mapped = MappedCarFile.open(file).flyweight();
+
+        Spliterator<Car> first = mapped.spliterator();
+        Spliterator<Car> prefix = first.trySplit();
+        assertNotNull(prefix);
+        AtomicInteger count = new AtomicInteger();
+        prefix.forEachRemaining(c -> count.incrementAndGet());
+        first.forEachRemaining(c -> count.incrementAndGet());
+        assertEquals(cars.size(), count.get());
+
+        double expected = 0.0;
+        for (Car car : cars) {
+            if ("RED".equals(car.getColor())) {
+                expected += car.getGasLevel();
+            }
+        }
+        double sequential = mapped.cars()
+            .filter(c -> "RED".equals(c.getColor()))
+            .mapToDouble(Car::getGasLevel)
+            .sum();
+        double parallel = mapped.cars()
+            .parallel()
+            .filter(c -> "RED".equals(c.getColor()))
+            .mapToDouble(Car::getGasLevel)
+            .sum();
+        assertEquals(expected, sequential, 1e-6);
+        assertEquals(expected, parallel, 1e-6);
+    }
+}
@@ -0,0 +1,163 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for Memo and Criterion.memoized.
+ */
+public class MemoTest
+    extends TestCase
+{
+    public void testLruEvictsLeastRecentlyUsed()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        Memo<Integer, Integer> memo = Memo.of(n -> {
+            calls.incrementAndGet();
+            return n * n;
+        }, 3, Memo.Policy.LRU);
+        assertEquals(Integer.valueOf(1), memo.apply(1));
+        memo.apply(2);
+        memo.apply(3);
+        memo.apply(1);
+        memo.apply(4);  // evicts 2, the least recently used
+        assertEquals(4, calls.get());
+        memo.apply(1);
+        memo.apply(3);
+        assertEquals(4, calls.get());
+        memo.apply(2);
+        assertEquals(5, calls.get());
+        assertEquals(3, memo.size());
+
+        Memo.Stats stats = memo.stats();
+        assertEquals(3, stats.hits());
+        assertEquals(5, stats.misses());
+        assertEquals(2, stats.evictions());
+    }
+
+    public void testTinyLfuKeepsHotKeysThroughAScan()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        Memo<Integer, Integer> memo = Memo.of(n -> {
+            calls.incrementAndGet();
+            return n;
+        }, 100, Memo.Policy.TINY_LFU);
+        for (int round = 0; round < 20; round++) {
+            for (int hot = 0; hot < 50; hot++) {
+                memo.apply(hot);
+            }
+        }
+        // a long scan of keys that are each used once
+        for (int cold = 1000; cold < 11_000; cold++) {
+            memo.apply(cold);
+        }
+        calls.set(0);
+        for (int hot = 0; hot < 50; hot++) {
+            memo.apply(hot);
+        }
+        assertTrue("hot keys recomputed: " + calls.get(), calls.get() <= 5);
+        assertTrue(memo.size() <= 100);
+
+        Memo<Integer, Integer> lru = Memo.of(n -> n, 100, Memo.Policy.LRU);
+        for (int hot = 0; hot < 50; hot++) {
+            lru.apply(hot);
+        }
+        for (int cold = 1000; cold < 11_000; cold++) {
+            lru.apply(cold);
+        }
+        long misses = lru.stats().misses();
+        for (int hot = 0; hot < 50; hot++) {
+            lru.apply(hot);
+        }
+        assertEquals(misses + 50, lru.stats().misses());
+    }
+
+    public void testEntriesExpireAfterWrite()
+    {
+        AtomicLong now = new AtomicLong();
+        AtomicInteger calls = new AtomicInteger();
+        Memo<String, Integer> expiring = Memo.of(s -> calls.incrementAndGet(), 10, Memo.Policy.LRU,
+            Duration.ofMillis(20), now::get);
+        assertEquals(Integer.valueOf(1), expiring.apply("a"));
+        now.addAndGet(Duration.ofMillis(19).toNanos());
+        assertEquals(Integer.valueOf(1), expiring.apply("a"));
+        now.addAndGet(Duration.ofMillis(1).toNanos());
+        assertEquals(Integer.valueOf(2), expiring.apply("a"));
+        assertEquals(Integer.valueOf(2), expiring.apply("a"));
+    }
+
+    public void testFailuresAreNotCached()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+        Memo<String, String> failing = Memo.of(s -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("first try fails");
+            }
+            return s;
+        }, 10, Memo.Policy.TINY_LFU);
+        try {
+            failing.apply("x");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("first try fails", e.getMessage());
+        }
+        assertEquals("x", failing.apply("x"));
+        assertEquals(2, attempts.get());
+    }
+
+    public void testConcurrentCallersWaitForOneComputation() throws InterruptedException
+    {
+        // threads asking for a key that is being computed wait for it instead of computing it again
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger slowCalls = new AtomicInteger();
+        Memo<String, String> slow = Memo.of(s -> {
+            slowCalls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return s + "!";
+        }, 10, Memo.Policy.TINY_LFU);
+        Thread[] threads = new Thread[8];
+        String[] results = new String[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            int index = t;
+            threads[t] = Thread.ofVirtual().start(() -> results[index] = slow.apply("key"));
+        }
+        // a hit is counted once a caller has found the pending computation, before it waits on it
+        while (slow.stats().hits() < threads.length - 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, slowCalls.get());
+        for (String result : results) {
+            assertEquals("key!", result);
+        }
+        assertEquals(threads.length - 1, slow.stats().hits());
+    }
+
+    public void testMemoizedCriterionTestsEachKeyOnce()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        Criterion<Integer> lastDigitSeven = Criterion.memoized(n -> n % 10, digit -> {
+            calls.incrementAndGet();
+            return digit == 7;
+        }, 100);
+        int matches = 0;
+        for (int n = 0; n < 1000; n++) {
+            if (lastDigitSeven.test(n)) {
+                matches++;
+            }
+        }
+        assertEquals(100, matches);
+        assertEquals(10, calls.get());
+    }
+}
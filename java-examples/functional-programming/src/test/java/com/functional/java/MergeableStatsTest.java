@@ -0,0 +1,92 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Unit tests for the mergeable accumulators RunningStats, QuantileSketch, HyperLogLog and HeavyHitters.
+ */
+public class MergeableStatsTest
+    extends TestCase
+{
+    private static double[] gasLevels(int n)
+    {
+        Random random = new Random(n);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = 1e9 + random.nextGaussian() * 3.0;
+        }
+        return values;
+    }
+
+    public void testRunningStatsMatchesTwoPassComputation()
+    {
+        double[] values = gasLevels(100_000);
+        double mean = Arrays.stream(values).average().getAsDouble();
+        double squares = 0.0;
+        for (double v : values) {
+            squares += (v - mean) * (v - mean);
+        }
+
+        RunningStats sequential = new RunningStats();
+        Arrays.stream(values).forEach(sequential);
+        RunningStats parallel = Arrays.stream(values).parallel()
+            .collect(RunningStats::new, RunningStats::accept, RunningStats::merge);
+        for (RunningStats stats : Arrays.asList(sequential, parallel)) {
+            assertEquals(values.length, stats.getCount());
+            assertEquals(mean, stats.getMean(), 1e-5);
+            // values around 1e9 with a spread of 3: the naive sum-of-squares formula would lose every digit here
+            assertEquals(squares / (values.length - 1), stats.getVariance(), 1e-6);
+            assertEquals(Arrays.stream(values).min().getAsDouble(), stats.getMin(), 0.0);
+            assertEquals(Arrays.stream(values).max().getAsDouble(), stats.getMax(), 0.0);
+        }
+        assertTrue(Double.isNaN(new RunningStats().getVariance()));
+    }
+
+    public void testQuantileSketchStaysWithinRankError()
+    {
+        int n = 200_000;
+        QuantileSketch sketch = IntStream.range(0, n).parallel()
+            .mapToDouble(i -> (i * 7919L) % n)
+            .collect(QuantileSketch::new, QuantileSketch::accept, QuantileSketch::merge);
+        assertEquals(n, sketch.getCount());
+        assertEquals(0.0, sketch.quantile(0.0), 0.0);
+        assertEquals(n - 1, sketch.quantile(1.0), 0.0);
+        for (double q : new double[]{0.01, 0.25, 0.5, 0.9, 0.99}) {
+            // the values are a permutation of 0..n-1, so the true quantile is q * n
+            assertEquals(q * n, sketch.quantile(q), 0.02 * n);
+        }
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+    }
+
+    public void testHyperLogLogAndHeavyHitters()
+    {
+        HyperLogLog distinct = IntStream.range(0, 1_000_000).parallel()
+            .mapToObj(i -> "passenger" + (i % 250_000))
+            .collect(HyperLogLog::new, HyperLogLog::accept, HyperLogLog::merge);
+        assertEquals(250_000, distinct.estimate(), 250_000 * 0.03);
+        HyperLogLog few = new HyperLogLog();
+        Arrays.asList("RED", "BLUE", "RED", "GREEN").forEach(few);
+        assertEquals(3, few.estimate());
+
+        // brand b occurs about 1/2^b of the time, with a long tail of rare brands
+        Random random = new Random(1);
+        String[] brands = new String[100_000];
+        for (int i = 0; i < brands.length; i++) {
+            int b = Integer.numberOfTrailingZeros(random.nextInt() | (1 << 20));
+            brands[i] = b < 4 ? "Brand" + b : "Rare" + random.nextInt(10_000);
+        }
+        HeavyHitters<String> top = Arrays.stream(brands).parallel()
+            .collect(() -> new HeavyHitters<>(64), HeavyHitters::accept, HeavyHitters::merge);
+        assertEquals(brands.length, top.getTotal());
+        Map<String, Long> top4 = top.top(4);
+        assertEquals(Arrays.asList("Brand0", "Brand1", "Brand2", "Brand3"), Arrays.asList(top4.keySet().toArray()));
+        long exact = Arrays.stream(brands).filter("Brand0"::equals).count();
+        assertTrue(top4.get("Brand0") >= exact);
+        assertTrue(top4.get("Brand0") <= exact + brands.length / 64);
+    }
+}
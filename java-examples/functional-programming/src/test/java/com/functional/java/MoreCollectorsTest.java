@@ -0,0 +1,132 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for MoreCollectors.
+ */
+public class MoreCollectorsTest
+    extends TestCase
+{
+    private static List<CollectorOperators.User> users(int n)
+    {
+        String[] cities = {"London", "New York", "Paris", "Tokyo"};
+        List<CollectorOperators.User> users = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            users.add(new CollectorOperators.User("user" + (i % 1000), cities[i % 7 % 4], 18 + i % 60));
+        }
+        return users;
+    }
+
+    public void testCountingByMatchesGroupingBy()
+    {
+        List<CollectorOperators.User> users = users(100_000);
+        Map<String, Long> expected = users.stream()
+            .collect(Collectors.groupingBy(CollectorOperators.User::getCity, Collectors.counting()));
+
+        MoreCollectors.CountingMap<String> sequential = users.stream()
+            .collect(MoreCollectors.countingBy(CollectorOperators.User::getCity));
+        MoreCollectors.CountingMap<String> parallel = users.parallelStream()
+            .collect(MoreCollectors.countingBy(CollectorOperators.User::getCity));
+        assertEquals(expected, sequential);
+        assertEquals(expected, parallel);
+        assertEquals(expected.get("Paris").longValue(), parallel.getLong("Paris"));
+        assertEquals(0, parallel.getLong("Lima"));
+        assertNull(parallel.get("Lima"));
+
+        Map<String, Long> byName = users.parallelStream()
+            .collect(MoreCollectors.countingBy(CollectorOperators.User::getName));
+        assertEquals(1000, byName.size());
+        assertEquals(Long.valueOf(100), byName.get("user7"));
+    }
+
+    public void testSummingByAndReadOnlyView()
+    {
+        List<CollectorOperators.User> users = users(1000);
+        Map<String, Long> expected = users.stream()
+            .collect(Collectors.groupingBy(CollectorOperators.User::getCity, Collectors.summingLong(CollectorOperators.User::getAge)));
+        Map<String, Long> ages = users.parallelStream()
+            .collect(MoreCollectors.summingBy(CollectorOperators.User::getCity, CollectorOperators.User::getAge));
+        assertEquals(expected, ages);
+        try {
+            ages.put("Lima", 1L);
+            fail("the result is a read-only view");
+        } catch (UnsupportedOperationException expectedFailure) {
+        }
+        try {
+            users.stream().collect(MoreCollectors.countingBy(u -> null));
+            fail("null keys are rejected, as by groupingBy");
+        } catch (NullPointerException expectedFailure) {
+        }
+    }
+
+    public void testToSortedMapAndTopN()
+    {
+        List<CollectorOperators.User> users = users(1000);
+        Map<String, Integer> ageByName = users.stream().limit(500).collect(
+            MoreCollectors.toSortedMap(CollectorOperators.User::getName, CollectorOperators.User::getAge,
+                Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey())));
+        Map<String, Integer> expected = users.stream().limit(500)
+            .sorted(Comparator.comparingInt(CollectorOperators.User::getAge).thenComparing(CollectorOperators.User::getName))
+            .collect(Collectors.toMap(CollectorOperators.User::getName, CollectorOperators.User::getAge, (a, b) -> a, LinkedHashMap::new));
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(ageByName.entrySet()));
+        assertEquals(expected, ageByName);
+        assertEquals(Integer.valueOf(25), ageByName.get("user7"));
+        assertFalse(ageByName.containsKey("user999"));
+
+        Map<String, Integer> oldest = MoreCollectors.sortedByValue(expected, Comparator.reverseOrder(), 3);
+        assertEquals(Arrays.asList(77, 77, 77), new ArrayList<>(oldest.values()));
+        Map<String, Integer> topFromParallel = users.parallelStream().limit(500).collect(
+            MoreCollectors.toSortedMap(CollectorOperators.User::getName, CollectorOperators.User::getAge,
+                Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()), 3));
+        assertEquals(Arrays.asList("user119", "user179", "user239"), new ArrayList<>(topFromParallel.keySet()));
+        assertTrue(MoreCollectors.sortedByValue(expected, Comparator.<Integer>naturalOrder(), 0).isEmpty());
+
+        try {
+            users.stream().collect(MoreCollectors.toSortedMap(CollectorOperators.User::getCity,
+                CollectorOperators.User::getAge, Map.Entry.<String, Integer>comparingByValue()));
+            fail("duplicate keys are rejected, as by toMap");
+        } catch (IllegalStateException expectedFailure) {
+        }
+    }
+
+    public void testJoiningMatchesCollectorsJoining() throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            names.add(i % 100 == 0 ? "" : "name" + i + (i % 7 == 0 ? "\u00e9" : ""));
+        }
+        String expected = names.stream().collect(Collectors.joining(", ", "[", "]"));
+
+        MoreCollectors.Joined sequential = names.stream().collect(MoreCollectors.joining(", ", "[", "]"));
+        MoreCollectors.Joined parallel = names.parallelStream().collect(MoreCollectors.joining(", ", "[", "]"));
+        assertEquals(expected.length(), sequential.length());
+        assertEquals(expected, sequential.toString());
+        assertEquals(expected, parallel.toString());
+
+        StringWriter writer = new StringWriter();
+        parallel.writeTo(writer);
+        assertEquals(expected, writer.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        parallel.writeTo(Channels.newChannel(bytes), StandardCharsets.UTF_8);
+        assertEquals(expected, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+        assertEquals("<>", Stream.<String>empty().collect(MoreCollectors.joining(",", "<", ">")).toString());
+        assertEquals("a", Stream.of("a").collect(MoreCollectors.joining(",")).toString());
+    }
+}
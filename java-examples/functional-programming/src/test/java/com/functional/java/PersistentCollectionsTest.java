@@ -0,0 +1,153 @@
+package com.functional.java;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for PersistentVector and PersistentMap, checked against ArrayList and HashMap.
+ */
+public class PersistentCollectionsTest
+    extends TestCase
+{
+    /**
+     * A key whose hash code only has a few distinct values, to force collision nodes.
+     */
+    private static final class Colliding
+    {
+        private final int id;
+
+        Colliding(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 3;
+        }
+    }
+
+    public void testVectorMatchesArrayListAndSharesStructure()
+    {
+        List<Integer> expected = new ArrayList<>();
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 40_000; i++) {
+            expected.add(i);
+            vector = vector.plus(i);
+        }
+        assertEquals(expected, vector);
+        assertEquals(expected, PersistentVector.from(expected));
+        assertEquals(expected.subList(0, 33), PersistentVector.from(expected.subList(0, 33)));
+
+        Random random = new Random(7);
+        PersistentVector<Integer> before = vector;
+        for (int i = 0; i < 1000; i++) {
+            int index = random.nextInt(expected.size());
+            expected.set(index, -i);
+            vector = vector.with(index, -i);
+        }
+        assertEquals(expected, vector);
+        assertEquals(Integer.valueOf(12_345), before.get(12_345));
+
+        PersistentVector<Integer> slice = vector.slice(1000, 1040);
+        assertEquals(expected.subList(1000, 1040), slice);
+        PersistentVector<Integer> extended = slice.plus(99).plus(100);
+        assertEquals(42, extended.size());
+        assertEquals(Integer.valueOf(100), extended.get(41));
+        assertEquals(expected.get(1040), vector.get(1040));
+        assertEquals(expected.subList(1010, 1020), slice.subList(10, 20));
+
+        try {
+            vector.add(1);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected: vectors are immutable
+        }
+    }
+
+    public void testMapMatchesHashMapIncludingCollisions()
+    {
+        Map<Object, Integer> expected = new HashMap<>();
+        PersistentMap<Object, Integer> map = PersistentMap.empty();
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            Object key = random.nextBoolean() ? (Object) random.nextInt(5000) : new Colliding(random.nextInt(50));
+            if (random.nextInt(4) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+        for (Object key : expected.keySet()) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        PersistentMap<Object, Integer> withNull = map.plus(null, -1);
+        assertEquals(Integer.valueOf(-1), withNull.get(null));
+        assertFalse(map.containsKey(null));
+        assertSame(withNull, withNull.plus(null, withNull.get(null)));
+        assertEquals(map, withNull.minus(null));
+
+        for (Object key : expected.keySet()) {
+            map = map.minus(key);
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    public void testSerializationAndSuperIterableResults() throws Exception
+    {
+        PersistentMap<String, PersistentVector<Integer>> groups = new SuperIterable<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7))
+            .groupBy(n -> n % 2 == 0 ? "even" : "odd");
+        assertEquals(Arrays.asList(2, 4, 6), groups.get("even"));
+        assertEquals(Arrays.asList(1, 3, 5, 7), groups.get("odd"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(groups);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(groups, in.readObject());
+        }
+
+        // a slice writes only its own elements, not the vector it shares storage with
+        PersistentVector.Builder<Integer> builder = PersistentVector.builder();
+        for (int i = 0; i < 100_000; i++) {
+            builder.add(7);
+        }
+        PersistentVector<Integer> large = builder.build();
+        bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(large.slice(10, 13));
+            out.writeObject(PersistentVector.empty());
+        }
+        assertTrue("bytes: " + bytes.size(), bytes.size() < 1000);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(Arrays.asList(7, 7, 7), in.readObject());
+            assertSame(PersistentVector.empty(), in.readObject());
+        }
+
+        Car car = Car.withGasColorPassengers(10, "RED", "Ford", "Alice", "Bob");
+        assertTrue(car.getPassengers() instanceof PersistentVector);
+        assertEquals(Arrays.asList("Alice", "Bob"), car.getPassengers());
+    }
+}
@@ -0,0 +1,734 @@
+package com.functional.java;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for SuperIterable pipelines.
+ */
+public class SuperIterableTest
+    extends TestCase
+{
+    private static <E> List<E> toList(Iterable<E> iterable)
+    {
+        List<E> list = new ArrayList<>();
+        for (E e : iterable) {
+            list.add(e);
+        }
+        return list;
+    }
+
+    public void testStagesAreDeferredUntilTerminalOperation()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        SuperIterable<Integer> pipeline = new SuperIterable<>(Arrays.asList(1, 2, 3, 4))
+            .filter(n -> { calls.incrementAndGet(); return n % 2 == 0; })
+            .map(n -> n * 10);
+        assertEquals(0, calls.get());
+
+        List<Integer> results = new ArrayList<>();
+        pipeline.forEvery(results::add);
+        assertEquals(Arrays.asList(20, 40), results);
+        assertEquals(4, calls.get());
+    }
+
+    public void testStagesAreFusedIntoOnePass()
+    {
+        List<String> trace = new ArrayList<>();
+        new SuperIterable<>(Arrays.asList(1, 2))
+            .filter(n -> { trace.add("f1:" + n); return true; })
+            .filter(n -> { trace.add("f2:" + n); return true; })
+            .map(n -> { trace.add("m:" + n); return n; })
+            .forEvery(n -> { });
+        assertEquals(Arrays.asList("f1:1", "f2:1", "m:1", "f1:2", "f2:2", "m:2"), trace);
+    }
+
+    public void testIteratorMatchesForEvery()
+    {
+        SuperIterable<Integer> pipeline = new SuperIterable<>(Arrays.asList(1, 2, 3))
+            .filter(n -> n != 2)
+            .flatMap(n -> new SuperIterable<>(Arrays.asList(n, null)));
+        assertEquals(Arrays.asList(1, null, 3, null), toList(pipeline));
+
+        Iterator<Integer> empty = new SuperIterable<>(Arrays.asList(1, 3))
+            .filter(n -> n % 2 == 0)
+            .iterator();
+        assertFalse(empty.hasNext());
+    }
+
+    public void testMaterializeTakesSnapshot()
+    {
+        List<Integer> source = new ArrayList<>(Arrays.asList(1, 2));
+        SuperIterable<Integer> lazy = new SuperIterable<>(source).map(n -> n + 1);
+        SuperIterable<Integer> eager = lazy.materialize();
+        source.add(3);
+        assertEquals(Arrays.asList(2, 3, 4), toList(lazy));
+        assertEquals(Arrays.asList(2, 3), toList(eager));
+    }
+
+    /**
+     * An endless 0, 1, 2, ... source that counts how many elements were pulled.
+     */
+    private static Iterable<Integer> naturals(AtomicInteger pulled)
+    {
+        return () -> new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() { return true; }
+
+            @Override
+            public Integer next() { return pulled.getAndIncrement(); }
+        };
+    }
+
+    public void testFindFirstStopsAtMatch()
+    {
+        AtomicInteger pulled = new AtomicInteger();
+        Optional<Integer> first = new SuperIterable<>(naturals(pulled))
+            .filter(n -> n > 41)
+            .findFirst();
+        assertEquals(Integer.valueOf(42), first.get());
+        assertEquals(43, pulled.get());
+
+        assertFalse(new SuperIterable<>(Arrays.asList(1, 3)).filter(n -> n % 2 == 0).findFirst().isPresent());
+    }
+
+    public void testMatchOperationsShortCircuit()
+    {
+        AtomicInteger pulled = new AtomicInteger();
+        SuperIterable<Integer> naturals = new SuperIterable<>(naturals(pulled));
+        assertTrue(naturals.anyMatch(n -> n == 10));
+        assertEquals(11, pulled.get());
+
+        pulled.set(0);
+        assertFalse(naturals.allMatch(n -> n < 5));
+        assertEquals(6, pulled.get());
+
+        pulled.set(0);
+        assertFalse(naturals.noneMatch(n -> n == 3));
+        assertEquals(4, pulled.get());
+
+        SuperIterable<Integer> empty = new SuperIterable<>(new ArrayList<Integer>());
+        assertFalse(empty.anyMatch(n -> true));
+        assertTrue(empty.allMatch(n -> false));
+        assertTrue(empty.noneMatch(n -> true));
+    }
+
+    public void testLimitAndTakeWhileOnUnboundedSource()
+    {
+        AtomicInteger pulled = new AtomicInteger();
+        List<Integer> limited = new ArrayList<>();
+        new SuperIterable<>(naturals(pulled))
+            .flatMap(n -> new SuperIterable<>(Arrays.asList(n, n)))
+            .limit(5)
+            .forEvery(limited::add);
+        assertEquals(Arrays.asList(0, 0, 1, 1, 2), limited);
+        assertEquals(3, pulled.get());
+
+        pulled.set(0);
+        assertEquals(Arrays.asList(0, 1, 2), toList(new SuperIterable<>(naturals(pulled)).takeWhile(n -> n < 3)));
+        assertEquals(4, pulled.get());
+
+        assertEquals(0, toList(new SuperIterable<>(naturals(pulled)).limit(0)).size());
+    }
+
+    public void testDropWhileKeepsEverythingAfterFirstMismatch()
+    {
+        assertEquals(Arrays.asList(3, 1, 4),
+            toList(new SuperIterable<>(Arrays.asList(1, 2, 3, 1, 4)).dropWhile(n -> n < 3)));
+    }
+
+    private static List<Integer> range(int size)
+    {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    public void testParallelKeepsEncounterOrder()
+    {
+        List<Integer> source = range(100_000);
+        SuperIterable<Integer> pipeline = new SuperIterable<>(source)
+            .filter(n -> n % 3 != 0)
+            .flatMap(n -> new SuperIterable<>(Arrays.asList(n, -n)))
+            .map(n -> n * 2);
+
+        List<Integer> expected = toList(pipeline);
+        List<Integer> actual = new ArrayList<>();
+        pipeline.parallel().forEvery(actual::add);
+        assertEquals(expected, actual);
+        assertEquals(expected, toList(pipeline.parallel().materialize()));
+
+        Set<Integer> fromPlainIterable = new HashSet<>();
+        new SuperIterable<>(source::iterator).parallel().forEvery(fromPlainIterable::add);
+        assertEquals(source.size(), fromPlainIterable.size());
+    }
+
+    public void testParallelUnorderedRunsOnChosenPool()
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+            AtomicLong sum = new AtomicLong();
+            new SuperIterable<>(range(10_000))
+                .parallel(pool)
+                .unordered()
+                .map(n -> { pools.add(ForkJoinTask.getPool()); return n; })
+                .forEvery(sum::addAndGet);
+            assertEquals(49_995_000L, sum.get());
+            assertEquals(Collections.singleton(pool), pools);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testParallelMatchAndStatefulFallback()
+    {
+        SuperIterable<Integer> numbers = new SuperIterable<>(range(50_000)).parallel();
+        assertTrue(numbers.anyMatch(n -> n == 49_999));
+        assertFalse(numbers.allMatch(n -> n < 40_000));
+        assertTrue(numbers.noneMatch(n -> n < 0));
+        assertEquals(Arrays.asList(0, 1, 2), toList(numbers.limit(3).materialize()));
+
+        AtomicInteger closed = new AtomicInteger();
+        SuperIterable<Integer> closing = new SuperIterable<>(
+            () -> new CloseCountingIterator<>(range(10_000).iterator(), closed)).parallel();
+        assertTrue(closing.anyMatch(n -> n == 5));
+        assertEquals(1, closed.get());
+        try {
+            closing.forEvery(n -> {
+                throw new IllegalStateException("boom");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals(2, closed.get());
+        }
+    }
+
+    public void testMapToIntAggregatesWithoutBoxing()
+    {
+        IntSuperIterable ints = new SuperIterable<>(range(10))
+            .filter(n -> n > 0)
+            .mapToInt(Integer::intValue)
+            .filter(n -> n % 2 == 1)
+            .map(n -> n * 10);
+        assertTrue(Arrays.equals(new int[]{10, 30, 50, 70, 90}, ints.toArray()));
+        assertEquals(250L, ints.sum());
+        assertEquals(10, ints.min().getAsInt());
+        assertEquals(90, ints.max().getAsInt());
+        assertEquals(50.0, ints.average().getAsDouble(), 0.0);
+        assertEquals(Arrays.asList("10", "30", "50", "70", "90"), toList(ints.mapToObj(String::valueOf)));
+
+        IntSuperIterable empty = IntSuperIterable.of().filter(n -> true);
+        assertEquals(0L, empty.sum());
+        assertFalse(empty.min().isPresent());
+        assertFalse(empty.average().isPresent());
+
+        assertTrue(Arrays.equals(new SuperIterable<>(range(100_000)).mapToInt(Integer::intValue).toArray(),
+            new SuperIterable<>(range(100_000)).parallel().mapToInt(Integer::intValue).toArray()));
+    }
+
+    public void testMapToDoubleAggregates()
+    {
+        DoubleSuperIterable gas = new SuperIterable<>(Arrays.asList(15.5, 8.2, 20.0, 5.5))
+            .mapToDouble(Double::doubleValue);
+        assertEquals(49.2, gas.sum(), 1e-9);
+        assertEquals(5.5, gas.min().getAsDouble(), 0.0);
+        assertEquals(20.0, gas.max().getAsDouble(), 0.0);
+        assertEquals(12.3, gas.average().getAsDouble(), 1e-9);
+        assertEquals(2, gas.filter(g -> g > 10).size());
+        assertEquals(73.5, IntSuperIterable.of(1, 2).mapToDouble(n -> n * 24.5).sum(), 1e-9);
+
+        // infinities add up as they do in DoubleStream.sum, instead of poisoning the compensation
+        List<Double> infinite = Arrays.asList(Double.POSITIVE_INFINITY, 1.0, 2.5);
+        assertEquals(Double.POSITIVE_INFINITY, new SuperIterable<>(infinite).mapToDouble(Double::doubleValue).sum());
+        assertEquals(Double.NEGATIVE_INFINITY,
+            new SuperIterable<>(infinite).mapToDouble(g -> -g).sum());
+        assertTrue(Double.isNaN(new SuperIterable<>(Arrays.asList(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY))
+            .mapToDouble(Double::doubleValue).sum()));
+    }
+
+    private static <T> T slowly(T value, long millis, AtomicInteger running, AtomicInteger maxRunning)
+    {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            running.decrementAndGet();
+        }
+        return value;
+    }
+
+    public void testMapAsyncBoundsConcurrencyAndKeepsOrder()
+    {
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            numbers.add(i);
+        }
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        // later elements finish first, but ordered output must not show it
+        List<Integer> ordered = toList(new SuperIterable<>(numbers)
+            .mapAsync(n -> slowly(n * 2, 40 - n, running, maxRunning), 8));
+        List<Integer> expected = new ArrayList<>();
+        numbers.forEach(n -> expected.add(n * 2));
+        assertEquals(expected, ordered);
+        assertTrue(maxRunning.get() <= 8);
+        assertTrue(maxRunning.get() > 1);
+
+        List<Integer> unordered = new ArrayList<>();
+        new SuperIterable<>(numbers)
+            .parallel()
+            .mapAsync(n -> slowly(n * 2, 40 - n, running, maxRunning), 8, false, Duration.ofSeconds(10))
+            .forEvery(unordered::add);
+        assertEquals(new HashSet<>(expected), new HashSet<>(unordered));
+        assertEquals(expected.size(), unordered.size());
+
+        AtomicInteger started = new AtomicInteger();
+        List<Integer> firstThree = toList(new SuperIterable<>(numbers)
+            .mapAsync(n -> { started.incrementAndGet(); return n; }, 4)
+            .limit(3));
+        assertEquals(Arrays.asList(0, 1, 2), firstThree);
+        assertTrue(started.get() <= 3 + 4);
+    }
+
+    public void testMapAsyncPropagatesErrorsAndTimeouts() throws InterruptedException
+    {
+        SuperIterable<Integer> numbers = new SuperIterable<>(Arrays.asList(1, 2, 3, 4, 5));
+        try {
+            numbers.mapAsync(n -> {
+                if (n == 3) {
+                    throw new IllegalStateException("lookup failed for " + n);
+                }
+                return n;
+            }, 2).forEvery(n -> { });
+            fail("the mapper's exception must reach the caller");
+        } catch (IllegalStateException expected) {
+            assertEquals("lookup failed for 3", expected.getMessage());
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (boolean ordered : new boolean[]{true, false}) {
+            try {
+                numbers.mapAsync(n -> slowly(n, n == 2 ? 5_000 : 1, running, maxRunning), 3, ordered, Duration.ofMillis(100))
+                    .forEvery(n -> { });
+                fail("a call over the timeout must fail the run");
+            } catch (CompletionException expected) {
+                assertTrue(expected.getCause() instanceof TimeoutException);
+            }
+        }
+
+        // unordered, a hung call times out even while the other calls keep completing
+        List<Integer> many = range(1000);
+        AtomicInteger started = new AtomicInteger();
+        try {
+            new SuperIterable<>(many)
+                .mapAsync(n -> {
+                    started.incrementAndGet();
+                    return slowly(n, n == 0 ? 5_000 : 5, running, maxRunning);
+                }, 2, false, Duration.ofMillis(100))
+                .forEvery(n -> { });
+            fail("the hung call must fail the run");
+        } catch (CompletionException expected) {
+            assertTrue(expected.getCause() instanceof TimeoutException);
+        }
+        assertTrue("calls started: " + started.get(), started.get() < many.size() / 2);
+
+        // a failing downstream cancels the calls still in flight
+        CountDownLatch interrupted = new CountDownLatch(3);
+        try {
+            new SuperIterable<>(many)
+                .mapAsync(n -> {
+                    try {
+                        Thread.sleep(n == 0 ? 50 : 5_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return n;
+                }, 4)
+                .forEvery(n -> {
+                    throw new IllegalStateException("downstream failed at " + n);
+                });
+            fail("the downstream exception must reach the caller");
+        } catch (IllegalStateException expected) {
+            assertEquals("downstream failed at 0", expected.getMessage());
+        }
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+    }
+
+    public void testBatchAndWindow()
+    {
+        SuperIterable<Integer> numbers = new SuperIterable<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7));
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6), Arrays.asList(7)),
+            toList(numbers.batch(3)));
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)),
+            toList(numbers.batch(2).limit(2)));
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(3, 4, 5), Arrays.asList(5, 6, 7)),
+            toList(numbers.window(3, 2)));
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(5, 6)), toList(numbers.window(2, 4)));
+        assertTrue(toList(numbers.window(8, 1)).isEmpty());
+
+        // with no delay allowed every element closes its own batch
+        assertEquals(7, toList(numbers.batch(100, Duration.ZERO)).size());
+        assertEquals(1, toList(numbers.batch(100, Duration.ofHours(1))).size());
+
+        AtomicInteger pulled = new AtomicInteger();
+        List<Integer> sizes = new ArrayList<>();
+        List<Integer> seen = new ArrayList<>();
+        new SuperIterable<>(naturals(pulled)).limit(1050).forEveryBatch(100, batch -> {
+            sizes.add(batch.size());
+            seen.addAll(batch);
+        });
+        assertEquals(11, sizes.size());
+        assertEquals(Integer.valueOf(50), sizes.get(10));
+        assertEquals(1050, seen.size());
+        assertEquals(Integer.valueOf(1049), seen.get(1049));
+
+        List<Integer> range = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            range.add(i);
+        }
+        AtomicLong total = new AtomicLong();
+        AtomicInteger calls = new AtomicInteger();
+        new SuperIterable<>(range).parallel().unordered().forEveryBatch(1000, batch -> {
+            calls.incrementAndGet();
+            total.addAndGet(batch.stream().mapToLong(Integer::longValue).sum());
+        });
+        assertEquals(99_999L * 100_000 / 2, total.get());
+        assertTrue(calls.get() >= 100);
+    }
+
+    /**
+     * A synchronous publisher of 0 until count that records the most items ever
+     * requested but not yet delivered.
+     */
+    private static Flow.Publisher<Integer> range(int count, AtomicLong maxOutstanding, AtomicBoolean cancelled)
+    {
+        return subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            private long outstanding;
+            private int next;
+
+            @Override
+            public void request(long n) {
+                outstanding += n;
+                maxOutstanding.accumulateAndGet(outstanding, Math::max);
+                while (outstanding > 0 && next < count && !cancelled.get()) {
+                    outstanding--;
+                    subscriber.onNext(next++);
+                    if (next == count) {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        });
+    }
+
+    public void testFromPublisherBoundsDemandAndCancels()
+    {
+        AtomicLong maxOutstanding = new AtomicLong();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        SuperIterable<Integer> published = SuperIterable.fromPublisher(range(1000, maxOutstanding, cancelled), 10);
+        assertEquals(1000, toList(published).size());
+        assertEquals(Arrays.asList(997, 998, 999), toList(published.filter(n -> n > 996).materialize()));
+        assertEquals(10, maxOutstanding.get());
+        assertFalse(cancelled.get());
+
+        assertEquals(Arrays.asList(0, 2, 4), toList(published.filter(n -> n % 2 == 0).limit(3).materialize()));
+        assertTrue(cancelled.get());
+
+        // a publisher that only calls onSubscribe after the run has already given up
+        AtomicReference<Flow.Subscriber<? super Integer>> late = new AtomicReference<>();
+        assertFalse(SuperIterable.<Integer>fromPublisher(late::set, 10).limit(0).findFirst().isPresent());
+        AtomicLong requested = new AtomicLong();
+        AtomicBoolean lateCancelled = new AtomicBoolean();
+        late.get().onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requested.addAndGet(n);
+            }
+
+            @Override
+            public void cancel() {
+                lateCancelled.set(true);
+            }
+        });
+        assertEquals(0, requested.get());
+        assertTrue(lateCancelled.get());
+
+        Flow.Publisher<Integer> failing = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                subscriber.onNext(1);
+                subscriber.onError(new IllegalStateException("broken"));
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        List<Integer> seen = new ArrayList<>();
+        try {
+            SuperIterable.fromPublisher(failing, 4).forEvery(seen::add);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertEquals(Collections.singletonList(1), seen);
+    }
+
+    public void testToPublisherHonoursDemand() throws InterruptedException
+    {
+        AtomicInteger pulled = new AtomicInteger();
+        List<Integer> received = new ArrayList<>();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        // a direct executor makes every request drain before it returns
+        new SuperIterable<>(naturals(pulled)).map(n -> n * 10).toPublisher(Runnable::run)
+            .subscribe(new Flow.Subscriber<Integer>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription[0] = s;
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    received.add(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    fail(throwable.toString());
+                }
+
+                @Override
+                public void onComplete() {
+                    fail();
+                }
+            });
+        assertEquals(0, pulled.get());
+        subscription[0].request(3);
+        assertEquals(Arrays.asList(0, 10, 20), received);
+        subscription[0].request(2);
+        assertEquals(5, received.size());
+        subscription[0].cancel();
+        subscription[0].request(10);
+        assertEquals(5, received.size());
+
+        // round trip through a virtual thread publisher and a small buffer on the consuming side
+        SuperIterable<Integer> roundTrip = SuperIterable.fromPublisher(
+            new SuperIterable<>(naturals(new AtomicInteger())).limit(100_000).toPublisher(), 16);
+        AtomicLong sum = new AtomicLong();
+        roundTrip.forEvery(sum::addAndGet);
+        assertEquals(99_999L * 100_000 / 2, sum.get());
+
+        // a subscriber that throws ends the subscription and closes the source
+        AtomicInteger closed = new AtomicInteger();
+        List<Integer> delivered = new ArrayList<>();
+        new SuperIterable<>(() -> new CloseCountingIterator<>(range(100).iterator(), closed)).toPublisher(Runnable::run)
+            .subscribe(new Flow.Subscriber<Integer>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription[0] = s;
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    delivered.add(item);
+                    if (item == 2) {
+                        throw new IllegalStateException("subscriber failed");
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+        try {
+            subscription[0].request(10);
+            fail("the subscriber's exception must reach the caller of the direct executor");
+        } catch (IllegalStateException expected) {
+            assertEquals("subscriber failed", expected.getMessage());
+        }
+        assertEquals(1, closed.get());
+        subscription[0].request(10);
+        assertEquals(Arrays.asList(0, 1, 2), delivered);
+    }
+
+    public void testInstrumentedStagesCountElementsAndRecordEvents() throws Exception
+    {
+        List<Integer> range = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            range.add(i);
+        }
+        PipelineMetrics.unregister("test");
+        SuperIterable<Integer> plain = new SuperIterable<>(range).filter(n -> n % 10 == 0).map(n -> n + 1);
+        assertTrue(plain.explain().contains("0 filter"));
+        assertTrue(plain.explain().contains("1 map"));
+
+        SuperIterable<Integer> measured = new SuperIterable<>(range)
+            .instrumented("test")
+            .filter(n -> n % 10 == 0)
+            .flatMap(n -> new SuperIterable<>(Arrays.asList(n, n)));
+        Path file = Files.createTempFile("pipeline", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.functional.java.PipelineStage");
+            recording.start();
+            measured.forEvery(n -> { });
+            measured.parallel().unordered().forEvery(n -> { });
+            recording.stop();
+            recording.dump(file);
+            assertFalse(RecordingFile.readAllEvents(file).isEmpty());
+        } finally {
+            Files.delete(file);
+        }
+
+        List<PipelineMetrics.StageMetrics> stages = PipelineMetrics.registry().get("test").stages();
+        assertEquals(2, stages.size());
+        assertEquals("filter", stages.get(0).name());
+        assertEquals(20_000, stages.get(0).elementsIn());
+        assertEquals(2_000, stages.get(0).elementsOut());
+        assertEquals(0.1, stages.get(0).selectivity(), 1e-9);
+        assertEquals(2_000, stages.get(1).elementsIn());
+        assertEquals(4_000, stages.get(1).elementsOut());
+        assertTrue(measured.explain().contains("in=20,000 out=2,000"));
+        PipelineMetrics.unregister("test");
+    }
+
+    public void testSpliteratorKeepsSizeAndCharacteristics()
+    {
+        List<Integer> range = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            range.add(i);
+        }
+        SuperIterable<Integer> numbers = new SuperIterable<>(range);
+
+        Spliterator<String> mapped = numbers.map(n -> "n" + n).spliterator();
+        assertTrue(mapped.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+        assertEquals(10_000, mapped.getExactSizeIfKnown());
+        Spliterator<String> prefix = mapped.trySplit();
+        assertNotNull(prefix);
+        assertEquals(10_000, prefix.getExactSizeIfKnown() + mapped.getExactSizeIfKnown());
+
+        Spliterator<Integer> filtered = numbers.filter(n -> n % 2 == 0).spliterator();
+        assertFalse(filtered.hasCharacteristics(Spliterator.SIZED));
+        assertTrue(filtered.hasCharacteristics(Spliterator.ORDERED));
+        assertFalse(numbers.unordered().map(n -> n).spliterator().hasCharacteristics(Spliterator.ORDERED));
+
+        TreeSet<String> sorted = new TreeSet<>(Comparator.reverseOrder());
+        sorted.addAll(Arrays.asList("a", "b", "c"));
+        Spliterator<String> sortedFiltered = new SuperIterable<>(sorted).filter(s -> !s.equals("b")).spliterator();
+        assertTrue(sortedFiltered.hasCharacteristics(Spliterator.SORTED | Spliterator.DISTINCT));
+        assertNotNull(sortedFiltered.getComparator());
+        assertFalse(new SuperIterable<>(sorted).map(s -> s).spliterator().hasCharacteristics(Spliterator.SORTED));
+        // SORTED goes with ORDERED, and the comparator comes from the source on the stateful path too,
+        // so sorted() cannot mistake the reverse order for the natural one and skip its sort
+        assertEquals(Spliterator.DISTINCT, new SuperIterable<>(sorted).unordered().filter(s -> true).spliterator().characteristics());
+        sorted.add("d");
+        assertEquals(Arrays.asList("b", "c", "d"),
+            new SuperIterable<>(sorted).limit(3).stream().sorted().collect(Collectors.toList()));
+
+        assertEquals(10_000, numbers.map(n -> n * 2).stream().toArray().length);
+        assertEquals(99_990_000L, numbers.map(n -> n * 2).parallelStream().mapToLong(Integer::longValue).sum());
+        assertEquals(Arrays.asList(0, 2, 4), numbers.filter(n -> n % 2 == 0).limit(3).stream().collect(Collectors.toList()));
+        assertEquals(-1, numbers.limit(3).spliterator().getExactSizeIfKnown());
+        assertEquals(3, numbers.limit(3).stream().count());
+
+        SuperIterable<Integer> fromStream = SuperIterable.from(range.stream().filter(n -> n < 100));
+        AtomicLong total = new AtomicLong();
+        fromStream.parallel().forEvery(total::addAndGet);
+        assertEquals(4950, total.get());
+        try {
+            fromStream.forEvery(n -> { });
+            fail();
+        } catch (IllegalStateException e) {
+            // expected: the stream was consumed by the first terminal operation
+        }
+        assertEquals(Arrays.asList(2, 3), toList(SuperIterable.from(Stream.of(1, 2, 3)).map(n -> n + 1).limit(2)));
+
+        // streams close a source iterator when they run out or are closed early
+        AtomicInteger closed = new AtomicInteger();
+        SuperIterable<Integer> closeable = new SuperIterable<>(() -> new CloseCountingIterator<>(range.iterator(), closed));
+        assertEquals(5000, closeable.filter(n -> n % 2 == 0).stream().count());
+        assertEquals(1, closed.get());
+        try (Stream<Integer> stream = closeable.limit(10).stream()) {
+            assertEquals(Optional.of(0), stream.findFirst());
+        }
+        assertEquals(2, closed.get());
+        try (Stream<Integer> stream = closeable.map(n -> n).stream()) {
+            assertEquals(Optional.of(0), stream.findFirst());
+        }
+        assertEquals(3, closed.get());
+    }
+
+    private static final class CloseCountingIterator<E> implements Iterator<E>, AutoCloseable
+    {
+        private final Iterator<E> iterator;
+        private final AtomicInteger closed;
+
+        CloseCountingIterator(Iterator<E> iterator, AtomicInteger closed)
+        {
+            this.iterator = iterator;
+            this.closed = closed;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public E next()
+        {
+            return iterator.next();
+        }
+
+        @Override
+        public void close()
+        {
+            closed.incrementAndGet();
+        }
+    }
+}